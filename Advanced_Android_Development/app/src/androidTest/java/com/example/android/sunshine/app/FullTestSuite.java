@@ -16,14 +16,49 @@
 package com.example.android.sunshine.app;
 
 import android.test.suitebuilder.TestSuiteBuilder;
+import android.test.suitebuilder.annotation.LargeTest;
 
 import junit.framework.Test;
+import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
 public class FullTestSuite extends TestSuite {
     public static Test suite() {
-        return new TestSuiteBuilder(FullTestSuite.class)
-                .includeAllPackagesUnderHere().build();
+        return withoutLargeTests(new TestSuiteBuilder(FullTestSuite.class)
+                .includeAllPackagesUnderHere().build());
+    }
+
+    /**
+     * Leaves out the tests marked {@link LargeTest}: the benchmarks, which take minutes and only
+     * log their timings.  Run those on their own, by class name.
+     */
+    private static TestSuite withoutLargeTests(TestSuite suite) {
+        TestSuite filtered = new TestSuite(suite.getName());
+        for (int i = 0; i < suite.testCount(); i++) {
+            Test test = suite.testAt(i);
+            if (test instanceof TestSuite) {
+                filtered.addTest(withoutLargeTests((TestSuite) test));
+            } else if (!isLargeTest(test)) {
+                filtered.addTest(test);
+            }
+        }
+        return filtered;
+    }
+
+    private static boolean isLargeTest(Test test) {
+        if (!(test instanceof TestCase)) {
+            return false;
+        }
+        Class<?> testClass = test.getClass();
+        if (testClass.isAnnotationPresent(LargeTest.class)) {
+            return true;
+        }
+        try {
+            return testClass.getMethod(((TestCase) test).getName())
+                    .isAnnotationPresent(LargeTest.class);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
     public FullTestSuite() {
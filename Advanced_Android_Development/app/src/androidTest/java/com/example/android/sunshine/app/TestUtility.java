@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.TimeZone;
+
+public class TestUtility extends AndroidTestCase {
+    private TimeZone mDefaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(mDefaultTimeZone);
+        super.tearDown();
+    }
+
+    /*
+        The formatter's date formats are fixed to the time zone they were made in, so a new
+        formatter is needed when the device changes time zone.
+     */
+    public void testFormatterFollowsTimeZone() {
+        // 2014-12-20 20:00 in Los Angeles is already the 21st in Tokyo
+        long date = 1419134400000L;
+
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        WeatherFormatter formatter = Utility.getFormatter(mContext);
+        assertSame(formatter, Utility.getFormatter(mContext));
+        String losAngelesDay = formatter.getFormattedMonthDay(date);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+        assertNotSame("Error: the formatter was kept after the time zone changed",
+                formatter, Utility.getFormatter(mContext));
+        assertFalse("Error: the date was formatted in the old time zone",
+                losAngelesDay.equals(Utility.getFormatter(mContext).getFormattedMonthDay(date)));
+    }
+}
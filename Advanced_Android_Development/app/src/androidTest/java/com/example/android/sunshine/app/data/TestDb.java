@@ -17,6 +17,7 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
@@ -55,6 +56,9 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HistoryEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.AggregateEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.LocationEntry.SEARCH_TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -91,6 +95,7 @@ public class TestDb extends AndroidTestCase {
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_GEOHASH);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
@@ -177,6 +182,55 @@ public class TestDb extends AndroidTestCase {
     }
 
 
+    /*
+        Upgrading from the last schema adds the location search index, and must keep the
+        history and the locations it refers to, since past days can't be fetched again.
+     */
+    public void testUpgradeKeepsHistory() {
+        long locationRowId = insertLocation();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues historyValues = new ContentValues();
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_LOC_KEY, locationRowId);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_PERIOD_START, TestUtilities.TEST_DATE);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_PERIOD_DAYS,
+                WeatherContract.HistoryEntry.PERIOD_DAY);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_SAMPLE_COUNT, 1);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_MIN_TEMP, -10);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_MAX_TEMP, 5);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_MEAN_TEMP, -2.5);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_HUMIDITY, 60);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_PRESSURE, 1010.5);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_WIND_SPEED, 3.25);
+        assertTrue(db.insert(WeatherContract.HistoryEntry.TABLE_NAME, null, historyValues) != -1);
+
+        // Take the database back to version 5, which had no search index
+        String locationTable = WeatherContract.LocationEntry.TABLE_NAME;
+        for (String trigger : new String[] {"_ai", "_bu", "_au", "_bd"}) {
+            db.execSQL("DROP TRIGGER " + locationTable + trigger);
+        }
+        db.execSQL("DROP TABLE " + WeatherContract.LocationEntry.SEARCH_TABLE_NAME);
+
+        dbHelper.onUpgrade(db, 5, 6);
+
+        assertEquals("Error: history was lost on upgrade", 1,
+                DatabaseUtils.queryNumEntries(db, WeatherContract.HistoryEntry.TABLE_NAME));
+        Cursor cursor = db.rawQuery("SELECT docid FROM " +
+                WeatherContract.LocationEntry.SEARCH_TABLE_NAME + " WHERE " +
+                WeatherContract.LocationEntry.SEARCH_TABLE_NAME + " MATCH ?",
+                new String[] {"North*"});
+        try {
+            assertTrue("Error: existing location was not indexed on upgrade",
+                    cursor.moveToFirst());
+            assertEquals(locationRowId, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        dbHelper.close();
+    }
+
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
         code from testLocationTable to here so that you can call this code from both
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Vector;
+
+public class TestForecastBatch extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastBatch.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final String[] DESCRIPTIONS = {"Clear", "Clouds", "Rain", "Clouds"};
+    private static final int ITERATIONS = 100;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static long dayDate(int day) {
+        return WeatherContract.normalizeDate(TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+    }
+
+    private static ForecastBatch buildBatch(int days) {
+        ForecastBatch batch = new ForecastBatch("North Pole", 64.7488, -147.353, days);
+        for (int i = 0; i < days; i++) {
+            batch.add(dayDate(i), 800 + i, DESCRIPTIONS[i % DESCRIPTIONS.length],
+                    -10 + i, 5 + i, 60 + i, 1010.5 + i, 3.25, 180);
+        }
+        return batch;
+    }
+
+    /**
+     * Builds the same forecast the way the sync adapter used to, for comparison.
+     */
+    private static ContentValues[] buildContentValues(long locationId, int days) {
+        Vector<ContentValues> cVVector = new Vector<ContentValues>(days);
+        for (int i = 0; i < days; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dayDate(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 60 + i);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1010.5 + i);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 3.25);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 180.0);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 5.0 + i);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, -10.0 + i);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    DESCRIPTIONS[i % DESCRIPTIONS.length]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800 + i);
+            cVVector.add(weatherValues);
+        }
+        ContentValues[] cvArray = new ContentValues[cVVector.size()];
+        cVVector.toArray(cvArray);
+        return cvArray;
+    }
+
+    /*
+        Counts the objects and bytes allocated building 14- and 16-day forecasts as a
+        ForecastBatch and as ContentValues.  normalizeDate allocates the same in both, so the
+        difference is down to the containers and boxing.
+     */
+    @SuppressWarnings("deprecation")
+    public void testAllocations() {
+        for (int days : new int[] {14, 16}) {
+            Debug.startAllocCounting();
+            try {
+                Debug.resetThreadAllocCount();
+                Debug.resetThreadAllocSize();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    buildContentValues(1, days);
+                }
+                int valuesCount = Debug.getThreadAllocCount() / ITERATIONS;
+                int valuesSize = Debug.getThreadAllocSize() / ITERATIONS;
+
+                Debug.resetThreadAllocCount();
+                Debug.resetThreadAllocSize();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    buildBatch(days);
+                }
+                int batchCount = Debug.getThreadAllocCount() / ITERATIONS;
+                int batchSize = Debug.getThreadAllocSize() / ITERATIONS;
+
+                Log.d(LOG_TAG, days + " days: ContentValues " + valuesCount + " objects/"
+                        + valuesSize + " bytes, ForecastBatch " + batchCount + " objects/"
+                        + batchSize + " bytes");
+                assertTrue("Error: ForecastBatch allocated more objects than ContentValues for "
+                        + days + " days", batchCount < valuesCount);
+            } finally {
+                Debug.stopAllocCounting();
+            }
+        }
+    }
+
+    public void testDescriptionsAreInterned() {
+        ForecastBatch batch = buildBatch(16);
+        assertEquals(3, batch.getDescriptionCount());
+        assertEquals("Rain", batch.getDescription(2));
+        assertEquals("Clouds", batch.getDescription(3));
+    }
+
+    public void testProviderBatchInsert() {
+        long locationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ForecastBatch batch = buildBatch(16);
+
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.WeatherEntry.CONTENT_URI);
+        try {
+            WeatherProvider provider = (WeatherProvider) client.getLocalContentProvider();
+            assertEquals(16, provider.bulkInsert(locationId, batch));
+            // Writing the same days again replaces them
+            assertEquals(16, provider.bulkInsert(locationId, batch));
+        } finally {
+            client.release();
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        try {
+            assertEquals(16, cursor.getCount());
+            int i = 0;
+            while (cursor.moveToNext()) {
+                assertEquals(locationId, cursor.getLong(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)));
+                assertEquals(batch.getDate(i), cursor.getLong(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE)));
+                assertEquals(batch.getWeatherId(i), cursor.getInt(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID)));
+                assertEquals(batch.getDescription(i), cursor.getString(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)));
+                assertEquals(batch.getMinTemp(i), cursor.getDouble(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)));
+                assertEquals(batch.getMaxTemp(i), cursor.getDouble(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)));
+                assertEquals(batch.getHumidity(i), cursor.getInt(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_HUMIDITY)));
+                assertEquals(batch.getPressure(i), cursor.getDouble(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_PRESSURE)));
+                i++;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestHistoryCompactor extends AndroidTestCase {
+    private static final int DAYS = 60;
+
+    private SQLiteDatabase mDb;
+    private long mNow;
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+        mNow = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        mLocationId = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        for (int i = 1; i <= DAYS; i++) {
+            ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+            values.put(WeatherEntry.COLUMN_DATE, mNow - i * HistoryCompactor.DAY_IN_MILLIS);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, -i);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, i);
+            mDb.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testArchiveCompactsOldDaysIntoWeeks() {
+        int moved = HistoryCompactor.archive(mDb, WeatherEntry.COLUMN_DATE + " < ?",
+                new String[] {Long.toString(mNow)}, 1000, mNow);
+        assertEquals(DAYS, moved);
+        assertEquals("Error: archived days were left in the weather table",
+                0, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+
+        long cutoff = (mNow - HistoryCompactor.DAILY_RETENTION_MILLIS)
+                / HistoryCompactor.WEEK_IN_MILLIS * HistoryCompactor.WEEK_IN_MILLIS;
+        Cursor cursor = mDb.query(HistoryEntry.TABLE_NAME, null, null, null, null, null,
+                HistoryEntry.COLUMN_PERIOD_START + " ASC");
+        int samples = 0;
+        double lowest = Double.MAX_VALUE;
+        try {
+            assertTrue(cursor.moveToFirst());
+            do {
+                long start = cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_PERIOD_START));
+                int days = cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_PERIOD_DAYS));
+                if (start < cutoff) {
+                    assertEquals("Error: old day was not compacted", HistoryEntry.PERIOD_WEEK, days);
+                } else {
+                    assertEquals("Error: recent day was compacted", HistoryEntry.PERIOD_DAY, days);
+                }
+                samples += cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_SAMPLE_COUNT));
+                lowest = Math.min(lowest,
+                        cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MIN_TEMP)));
+            } while (cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+        assertEquals("Error: compaction lost days", DAYS, samples);
+        assertEquals("Error: compaction lost the record low", (double) -DAYS, lowest);
+    }
+
+    public void testBudgetDropsOldestRows() {
+        HistoryCompactor.archive(mDb, WeatherEntry.COLUMN_DATE + " < ?",
+                new String[] {Long.toString(mNow)}, 5, mNow);
+        assertEquals(5, DatabaseUtils.queryNumEntries(mDb, HistoryEntry.TABLE_NAME));
+
+        Cursor cursor = mDb.query(HistoryEntry.TABLE_NAME,
+                new String[] {"MAX(" + HistoryEntry.COLUMN_PERIOD_START + ")"},
+                null, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Error: the budget dropped the newest day",
+                    mNow - HistoryCompactor.DAY_IN_MILLIS, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void insertDay(long date, double meanTemp) {
+        ContentValues values = new ContentValues();
+        values.put(HistoryEntry.COLUMN_LOC_KEY, mLocationId);
+        values.put(HistoryEntry.COLUMN_PERIOD_START, date);
+        values.put(HistoryEntry.COLUMN_PERIOD_DAYS, HistoryEntry.PERIOD_DAY);
+        values.put(HistoryEntry.COLUMN_SAMPLE_COUNT, 1);
+        values.put(HistoryEntry.COLUMN_MIN_TEMP, meanTemp - 5);
+        values.put(HistoryEntry.COLUMN_MAX_TEMP, meanTemp + 5);
+        values.put(HistoryEntry.COLUMN_MEAN_TEMP, meanTemp);
+        values.put(HistoryEntry.COLUMN_HUMIDITY, 50);
+        values.put(HistoryEntry.COLUMN_PRESSURE, 1000);
+        values.put(HistoryEntry.COLUMN_WIND_SPEED, 3);
+        mDb.insert(HistoryEntry.TABLE_NAME, null, values);
+    }
+
+    /*
+        Days that arrive after their week was compacted should be merged into the weekly row,
+        weighted by how many days each side holds, rather than replacing it.
+     */
+    public void testCompactingSameWeekTwiceMerges() {
+        long week = (mNow - 10 * HistoryCompactor.WEEK_IN_MILLIS)
+                / HistoryCompactor.WEEK_IN_MILLIS * HistoryCompactor.WEEK_IN_MILLIS;
+        for (int i = 0; i < 3; i++) {
+            insertDay(week + i * HistoryCompactor.DAY_IN_MILLIS, 10);
+        }
+        HistoryCompactor.compact(mDb, mNow);
+
+        insertDay(week + 5 * HistoryCompactor.DAY_IN_MILLIS, 30);
+        HistoryCompactor.compact(mDb, mNow);
+
+        Cursor cursor = mDb.query(HistoryEntry.TABLE_NAME, null,
+                HistoryEntry.COLUMN_LOC_KEY + " = ? AND " + HistoryEntry.COLUMN_PERIOD_START
+                        + " = ?",
+                new String[] {Long.toString(mLocationId), Long.toString(week)},
+                null, null, null);
+        try {
+            assertEquals("Error: the week should have a single row", 1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(HistoryEntry.PERIOD_WEEK,
+                    cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_PERIOD_DAYS)));
+            assertEquals("Error: compacting the week again lost the days already in it", 4,
+                    cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_SAMPLE_COUNT)));
+            assertEquals("Error: the mean was not weighted by sample count", 15.0,
+                    cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MEAN_TEMP)),
+                    0.001);
+            assertEquals(5.0,
+                    cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MIN_TEMP)));
+            assertEquals(35.0,
+                    cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MAX_TEMP)));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class TestLocationRegistry extends AndroidTestCase {
+    private static final String[] SETTINGS = {"94043", "10001", "SW1A 1AA"};
+
+    private LocationRegistry mRegistry;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        // A registry of our own, so the shared one's counters don't get in the way
+        mRegistry = new LocationRegistry(mContext.getContentResolver());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testRemembersLocations() {
+        long northPoleId = TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        assertEquals(northPoleId, mRegistry.getLocationId(TestUtilities.TEST_LOCATION));
+        assertEquals(northPoleId, mRegistry.getLocationId(TestUtilities.TEST_LOCATION));
+        assertEquals(1, mRegistry.getQueryCount());
+        assertEquals(1, mRegistry.getHitCount());
+        assertEquals(1, mRegistry.getMissCount());
+        assertEquals(0.5f, mRegistry.getHitRate());
+
+        // Unknown settings aren't remembered, so a location added later is still found
+        assertEquals(-1, mRegistry.getLocationId(SETTINGS[0]));
+        long addedId = mRegistry.addLocation(SETTINGS[0], "Mountain View", 37.4, -122.1);
+        int queries = mRegistry.getQueryCount();
+        assertEquals(addedId, mRegistry.getLocationId(SETTINGS[0]));
+        assertEquals("Error: a location we just added was looked up again",
+                queries, mRegistry.getQueryCount());
+    }
+
+    public void testAddLocationReusesExistingRow() {
+        long northPoleId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        assertEquals(northPoleId, mRegistry.addLocation(TestUtilities.TEST_LOCATION,
+                "North Pole", 64.7488, -147.353));
+    }
+
+    public void testResolvesManyLocationsInOneQuery() {
+        for (String setting : SETTINGS) {
+            ContentValues values = TestUtilities.createNorthPoleLocationValues();
+            values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, setting);
+            mContext.getContentResolver().insert(WeatherContract.LocationEntry.CONTENT_URI, values);
+        }
+
+        Map<String, Long> ids = mRegistry.resolve(Arrays.asList(SETTINGS));
+        assertEquals(SETTINGS.length, ids.size());
+        assertEquals(1, mRegistry.getQueryCount());
+
+        ids = mRegistry.resolve(Arrays.asList(SETTINGS));
+        assertEquals(SETTINGS.length, ids.size());
+        assertEquals("Error: remembered locations were looked up again",
+                1, mRegistry.getQueryCount());
+    }
+
+    public void testInvalidateForgetsLocations() {
+        long northPoleId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        assertEquals(northPoleId, mRegistry.getLocationId(TestUtilities.TEST_LOCATION));
+
+        deleteAll();
+        mRegistry.invalidate();
+        assertEquals(1, mRegistry.getInvalidationCount());
+        assertEquals("Error: a deleted location was still remembered",
+                -1, mRegistry.getLocationId(TestUtilities.TEST_LOCATION));
+    }
+}
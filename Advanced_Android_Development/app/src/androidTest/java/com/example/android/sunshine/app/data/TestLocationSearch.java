@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestLocationSearch extends AndroidTestCase {
+    public static final String LOG_TAG = TestLocationSearch.class.getSimpleName();
+
+    private static final int SYNTHETIC_LOCATIONS = 50000;
+    private static final int SEARCHES = 200;
+    private static final long MAX_SEARCH_NANOS = 5 * 1000 * 1000;
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ra", "ten", "bur", "vil", "san", "or", "del",
+            "mar", "ston", "ford", "ham", "ley", "port", "ri", "ga", "no", "wick"
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testBuildPrefixMatch() {
+        assertEquals("\"mou*\" \"vi*\"", WeatherProvider.buildPrefixMatch("mou vi"));
+        assertEquals("\"SW1A*\" \"1AA*\"", WeatherProvider.buildPrefixMatch(" SW1A-1AA"));
+        assertEquals("Error: an FTS operator was passed through",
+                "\"OR*\"", WeatherProvider.buildPrefixMatch("\"OR\"*"));
+        assertNull(WeatherProvider.buildPrefixMatch(" ,* "));
+    }
+
+    public void testSearchFollowsLocationTable() {
+        insertLocation("94043", "Mountain View");
+        insertLocation("London, UK", "London");
+        insertLocation("99705", "North Pole");
+
+        assertSearch("mou vi", "94043");
+        assertSearch("lon", "London, UK");
+        assertSearch("uk", "London, UK");
+        assertSearch("940", "94043");
+        assertSearch("view mountain", "94043");
+        assertSearch("paris");
+
+        // Renamed and deleted rows leave the index too
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Santa Claus");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"99705"});
+        assertSearch("north");
+        assertSearch("santa", "99705");
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"London, UK"});
+        assertSearch("lon");
+    }
+
+    private void insertLocation(String setting, String cityName) {
+        ContentValues values = TestUtilities.createNorthPoleLocationValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+
+    private void assertSearch(String query, String... expectedSettings) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri(query),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null,
+                LocationEntry.COLUMN_LOCATION_SETTING + " ASC");
+        assertNotNull(cursor);
+        try {
+            String[] settings = new String[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                settings[i] = cursor.getString(0);
+            }
+            assertTrue("Error: searching for \"" + query + "\" found "
+                            + Arrays.toString(settings),
+                    Arrays.equals(expectedSettings, settings));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Times prefix searches through the provider over 50k made up place names, and checks the
+        median stays within budget.  It takes a while, so FullTestSuite leaves it out.
+     */
+    @LargeTest
+    public void testBenchmarkPrefixSearch() {
+        Random random = new Random(42);
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        try {
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + LocationEntry.TABLE_NAME
+                    + " (" + LocationEntry.COLUMN_LOCATION_SETTING + ", "
+                    + LocationEntry.COLUMN_CITY_NAME + ", "
+                    + LocationEntry.COLUMN_COORD_LAT + ", "
+                    + LocationEntry.COLUMN_COORD_LONG + ") VALUES (?, ?, 0, 0)");
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < SYNTHETIC_LOCATIONS; i++) {
+                    String name = randomWord(random) + " " + randomWord(random);
+                    insert.bindString(1, name + ", " + i);
+                    insert.bindString(2, name);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+        } finally {
+            db.close();
+        }
+
+        long[] nanos = new long[SEARCHES];
+        int results = 0;
+        for (int i = 0; i < SEARCHES; i++) {
+            String word = randomWord(random);
+            String prefix = word.substring(0, Math.min(word.length(), 2 + random.nextInt(3)));
+            long start = SystemClock.elapsedRealtimeNanos();
+            Cursor cursor = mContext.getContentResolver().query(
+                    LocationEntry.buildLocationSearchUri(prefix),
+                    new String[]{LocationEntry._ID, LocationEntry.COLUMN_CITY_NAME,
+                            LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+            assertNotNull(cursor);
+            // Running the query doesn't happen until the cursor is first read
+            results += cursor.getCount();
+            cursor.close();
+            nanos[i] = SystemClock.elapsedRealtimeNanos() - start;
+        }
+        Arrays.sort(nanos);
+        long median = nanos[SEARCHES / 2];
+        long p95 = nanos[SEARCHES * 95 / 100];
+        Log.d(LOG_TAG, SYNTHETIC_LOCATIONS + " locations, " + SEARCHES + " prefix searches ("
+                + results + " results): median " + median / 1000 + "us, 95th percentile "
+                + p95 / 1000 + "us, slowest " + nanos[SEARCHES - 1] / 1000 + "us");
+        assertTrue("Error: prefix searches took " + median / 1000 + "us, more than "
+                + MAX_SEARCH_NANOS / 1000 + "us", median < MAX_SEARCH_NANOS);
+    }
+
+    private static String randomWord(Random random) {
+        int syllables = 2 + random.nextInt(3);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        return word.toString();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.Random;
+
+public class TestNearestLocation extends AndroidTestCase {
+    public static final String LOG_TAG = TestNearestLocation.class.getSimpleName();
+
+    // Enough to check the index against a full scan without slowing the suite down
+    private static final int CHECKED_LOCATIONS = 2000;
+    private static final int SYNTHETIC_LOCATIONS = 100000;
+    private static final int LOOKUPS = 100;
+    private static final double RADIUS_KM = 10;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testEncode() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("Error: the stored precision is wrong",
+                GeoHash.STORED_PRECISION, GeoHash.encode(0, 0, GeoHash.STORED_PRECISION).length());
+    }
+
+    public void testNearestLocationUri() {
+        insertLocation("London", 51.5074, -0.1278);
+        insertLocation("Greenwich", 51.4826, 0.0077);
+
+        // Westminster is ~1km from central London and ~10km from Greenwich
+        assertEquals("London", queryNearest(51.4995, -0.1248, 5));
+        // Nothing within 1km of Wimbledon
+        assertNull(queryNearest(51.4214, -0.2064, 1));
+
+        // Across the date line
+        insertLocation("Taveuni", -16.8, 179.99);
+        assertEquals("Taveuni", queryNearest(-16.8, -179.99, 5));
+    }
+
+    private void insertLocation(String setting, double lat, double lon) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, setting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+
+    private String queryNearest(double lat, double lon, double radiusKm) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(lat, lon, radiusKm),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Checks that the geohash index finds the same nearest location as reading every row.
+     */
+    public void testIndexedLookupMatchesScan() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Random random = new Random(42);
+        try {
+            insertSyntheticLocations(db, random, CHECKED_LOCATIONS);
+            // A wide radius, so the sparse locations still give some hits
+            double radiusKm = 500;
+            int found = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                double lat = randomLatitude(random);
+                double lon = random.nextDouble() * 360 - 180;
+                long indexed = WeatherProvider.findNearestLocation(db, lat, lon, radiusKm);
+                assertEquals("Error: the indexed lookup missed the nearest location",
+                        findNearestByScan(db, lat, lon, radiusKm), indexed);
+                if (indexed != -1) {
+                    found++;
+                }
+            }
+            assertTrue("Error: no lookup found anything, so nothing was checked", found > 0);
+        } finally {
+            db.close();
+        }
+    }
+
+    /*
+        Times nearest lookups over 100k random locations with the geohash index, against reading
+        every row.  It takes a while and only logs its timings, so FullTestSuite leaves it out.
+     */
+    @LargeTest
+    public void testBenchmarkNearestLocation() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Random random = new Random(42);
+        try {
+            insertSyntheticLocations(db, random, SYNTHETIC_LOCATIONS);
+
+            double[][] points = new double[LOOKUPS][];
+            for (int i = 0; i < LOOKUPS; i++) {
+                points[i] = new double[] {randomLatitude(random), random.nextDouble() * 360 - 180};
+            }
+
+            long[] indexed = new long[LOOKUPS];
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < LOOKUPS; i++) {
+                indexed[i] = WeatherProvider.findNearestLocation(db, points[i][0], points[i][1],
+                        RADIUS_KM);
+            }
+            long indexedNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            long[] scanned = new long[LOOKUPS];
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < LOOKUPS; i++) {
+                scanned[i] = findNearestByScan(db, points[i][0], points[i][1], RADIUS_KM);
+            }
+            long scanNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            int found = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                assertEquals("Error: the indexed lookup missed the nearest location",
+                        scanned[i], indexed[i]);
+                if (indexed[i] != -1) {
+                    found++;
+                }
+            }
+            Log.d(LOG_TAG, SYNTHETIC_LOCATIONS + " locations, " + LOOKUPS + " lookups within "
+                    + RADIUS_KM + "km (" + found + " found): geohash "
+                    + indexedNanos / LOOKUPS / 1000 + "us/lookup, full scan "
+                    + scanNanos / LOOKUPS / 1000 + "us/lookup");
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void insertSyntheticLocations(SQLiteDatabase db, Random random, int count) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + LocationEntry.TABLE_NAME
+                + " (" + LocationEntry.COLUMN_LOCATION_SETTING + ", "
+                + LocationEntry.COLUMN_CITY_NAME + ", "
+                + LocationEntry.COLUMN_COORD_LAT + ", "
+                + LocationEntry.COLUMN_COORD_LONG + ", "
+                + LocationEntry.COLUMN_GEOHASH + ") VALUES (?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                double lat = randomLatitude(random);
+                double lon = random.nextDouble() * 360 - 180;
+                insert.bindString(1, "synthetic " + i);
+                insert.bindString(2, "Synthetic " + i);
+                insert.bindDouble(3, lat);
+                insert.bindDouble(4, lon);
+                insert.bindString(5, GeoHash.encode(lat, lon, GeoHash.STORED_PRECISION));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * @return a latitude spread evenly over the surface, rather than bunched at the poles.
+     */
+    private static double randomLatitude(Random random) {
+        return Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+    }
+
+    private static long findNearestByScan(SQLiteDatabase db, double lat, double lon,
+                                          double radiusKm) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID,
+                        LocationEntry.COLUMN_COORD_LAT, LocationEntry.COLUMN_COORD_LONG},
+                null, null, null, null, null);
+        long nearestId = -1;
+        double nearestDistance = radiusKm;
+        try {
+            while (cursor.moveToNext()) {
+                double distance = GeoHash.distanceKm(lat, lon, cursor.getDouble(1),
+                        cursor.getDouble(2));
+                if (distance <= nearestDistance) {
+                    nearestDistance = distance;
+                    nearestId = cursor.getLong(0);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return nearestId;
+    }
+}
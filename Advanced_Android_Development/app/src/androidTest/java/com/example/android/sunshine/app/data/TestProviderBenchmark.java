@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+    Times the provider the way the app uses it, from a single forecast up to years of history for
+    a thousand locations.  Forecasts are written as the sync writes them, a ForecastBatch straight
+    to the provider in our process, and queries go through the ContentResolver.  Rewriting a
+    forecast is also timed through the ContentResolver with ContentValues, the path the sync
+    falls back to, for comparison.  Results are logged and written as
+    JSON to provider_benchmark.json in the app's external files directory, so runs can be
+    compared over time:
+
+    adb shell am instrument -w -e class \
+        com.example.android.sunshine.app.data.TestProviderBenchmark \
+        com.example.android.sunshine.app.test/android.test.InstrumentationTestRunner
+    adb pull /sdcard/Android/data/com.example.android.sunshine.app/files/provider_benchmark.json
+
+    It takes minutes, so FullTestSuite leaves it out.
+ */
+@LargeTest
+public class TestProviderBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestProviderBenchmark.class.getSimpleName();
+
+    static final String RESULTS_FILE_NAME = "provider_benchmark.json";
+
+    // {locations, days of weather per location}
+    private static final int[][] SIZES = {
+            {1, 14},
+            {20, 365},
+            {1000, 2 * 365}
+    };
+
+    // Days sent in each bulkInsert, as in a sync
+    private static final int FORECAST_DAYS = 14;
+    private static final int QUERIES = 200;
+    // Forecasts rewritten through each insert path, for comparing them
+    private static final int REWRITES = 100;
+    private static final int MIXED_OPERATIONS = 400;
+    // Share of the mixed operations that are reads
+    private static final float MIXED_READ_FRACTION = 0.8f;
+
+    private ContentResolver mResolver;
+    private ContentProviderClient mClient;
+    private WeatherProvider mProvider;
+    private Random mRandom;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = mContext.getContentResolver();
+        mClient = mResolver.acquireContentProviderClient(WeatherEntry.CONTENT_URI);
+        mProvider = (WeatherProvider) mClient.getLocalContentProvider();
+        mRandom = new Random(42);
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        mClient.release();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        mResolver.delete(HistoryEntry.CONTENT_URI, null, null);
+        mResolver.delete(AggregateEntry.CONTENT_URI, null, null);
+        mResolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testBenchmarkProvider() throws JSONException, IOException {
+        JSONObject results = new JSONObject();
+        results.put("device", Build.MODEL);
+        results.put("sdkInt", Build.VERSION.SDK_INT);
+        results.put("timestamp", System.currentTimeMillis());
+
+        JSONArray sizes = new JSONArray();
+        for (int[] size : SIZES) {
+            deleteAll();
+            sizes.put(runSize(size[0], size[1]));
+        }
+        results.put("sizes", sizes);
+
+        File dir = mContext.getExternalFilesDir(null);
+        if (dir == null) {
+            // No external storage mounted
+            dir = mContext.getFilesDir();
+        }
+        File file = new File(dir, RESULTS_FILE_NAME);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(results.toString(2));
+        } finally {
+            writer.close();
+        }
+        Log.d(LOG_TAG, "Results written to " + file.getAbsolutePath());
+    }
+
+    private JSONObject runSize(int locationCount, int days) throws JSONException {
+        String[] settings = new String[locationCount];
+        long[] locationIds = new long[locationCount];
+        for (int i = 0; i < locationCount; i++) {
+            settings[i] = "benchmark " + i;
+            locationIds[i] = insertLocation(settings[i]);
+        }
+
+        // The newest days run from today, like a forecast that has been synced every day
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long firstDate = today - (days - FORECAST_DAYS) * DateUtils.DAY_IN_MILLIS;
+
+        // Fill the history a sync at a time, oldest first, so the aggregates are folded as they
+        // would be in the app
+        long insertNanos = 0;
+        int rows = 0;
+        for (int day = 0; day < days; day += FORECAST_DAYS) {
+            int windowDays = Math.min(FORECAST_DAYS, days - day);
+            long windowStart = firstDate + day * DateUtils.DAY_IN_MILLIS;
+            for (long locationId : locationIds) {
+                ForecastBatch batch = createForecast(windowStart, windowDays);
+                long start = SystemClock.elapsedRealtimeNanos();
+                int inserted = mProvider.bulkInsert(locationId, batch);
+                insertNanos += SystemClock.elapsedRealtimeNanos() - start;
+                assertEquals(windowDays, inserted);
+                rows += inserted;
+            }
+        }
+
+        JSONObject bulkInsert = new JSONObject();
+        bulkInsert.put("rows", rows);
+        bulkInsert.put("millis", insertNanos / 1000000);
+        bulkInsert.put("rowsPerSecond", rows * 1e9 / insertNanos);
+
+        // The same forecast rewrites through both paths
+        long[] batchRewrites = new long[REWRITES];
+        long[] valuesRewrites = new long[REWRITES];
+        for (int i = 0; i < REWRITES; i++) {
+            long locationId = locationIds[mRandom.nextInt(locationCount)];
+            ForecastBatch batch = createForecast(today, FORECAST_DAYS);
+            long start = SystemClock.elapsedRealtimeNanos();
+            mProvider.bulkInsert(locationId, batch);
+            batchRewrites[i] = SystemClock.elapsedRealtimeNanos() - start;
+
+            // Building the ContentValues is part of that path's cost
+            start = SystemClock.elapsedRealtimeNanos();
+            mResolver.bulkInsert(WeatherEntry.CONTENT_URI, batch.toContentValues(locationId));
+            valuesRewrites[i] = SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        JSONObject rewrites = new JSONObject();
+        rewrites.put("forecastBatch", summarize(batchRewrites, REWRITES));
+        rewrites.put("contentValues", summarize(valuesRewrites, REWRITES));
+
+        long[] withLocation = new long[QUERIES];
+        long[] withLocationAndDate = new long[QUERIES];
+        long[] location = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String setting = settings[mRandom.nextInt(locationCount)];
+            withLocation[i] = timeQuery(WeatherEntry.buildWeatherLocationWithStartDate(
+                    setting, today), null, null);
+            long date = firstDate + mRandom.nextInt(days) * DateUtils.DAY_IN_MILLIS;
+            withLocationAndDate[i] = timeQuery(WeatherEntry.buildWeatherLocationWithDate(
+                    setting, date), null, null);
+            location[i] = timeQuery(LocationEntry.CONTENT_URI,
+                    LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{setting});
+        }
+
+        JSONObject queries = new JSONObject();
+        queries.put("weatherWithLocation", summarize(withLocation, withLocation.length));
+        queries.put("weatherWithLocationAndDate",
+                summarize(withLocationAndDate, withLocationAndDate.length));
+        queries.put("location", summarize(location, location.length));
+
+        // The forecast screen reading while syncs rewrite the days from today on
+        long[] reads = new long[MIXED_OPERATIONS];
+        long[] writes = new long[MIXED_OPERATIONS];
+        int readCount = 0;
+        int writeCount = 0;
+        for (int i = 0; i < MIXED_OPERATIONS; i++) {
+            int index = mRandom.nextInt(locationCount);
+            if (mRandom.nextFloat() < MIXED_READ_FRACTION) {
+                reads[readCount++] = timeQuery(WeatherEntry.buildWeatherLocationWithStartDate(
+                        settings[index], today), null, null);
+            } else {
+                ForecastBatch batch = createForecast(today, FORECAST_DAYS);
+                long start = SystemClock.elapsedRealtimeNanos();
+                mProvider.bulkInsert(locationIds[index], batch);
+                writes[writeCount++] = SystemClock.elapsedRealtimeNanos() - start;
+            }
+        }
+
+        JSONObject mixed = new JSONObject();
+        mixed.put("reads", summarize(reads, readCount));
+        mixed.put("writes", summarize(writes, writeCount));
+
+        JSONObject result = new JSONObject();
+        result.put("locations", locationCount);
+        result.put("days", days);
+        result.put("bulkInsert", bulkInsert);
+        result.put("rewrites", rewrites);
+        result.put("queries", queries);
+        result.put("mixed", mixed);
+        Log.d(LOG_TAG, locationCount + " locations x " + days + " days: " + result.toString());
+        return result;
+    }
+
+    private long insertLocation(String setting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Benchmark");
+        values.put(LocationEntry.COLUMN_COORD_LAT, mRandom.nextDouble() * 180 - 90);
+        values.put(LocationEntry.COLUMN_COORD_LONG, mRandom.nextDouble() * 360 - 180);
+        Uri uri = mResolver.insert(LocationEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return Long.parseLong(uri.getLastPathSegment());
+    }
+
+    private ForecastBatch createForecast(long startDate, int days) {
+        ForecastBatch batch = new ForecastBatch("Benchmark", 0, 0, days);
+        for (int i = 0; i < days; i++) {
+            batch.add(startDate + i * DateUtils.DAY_IN_MILLIS, 800, "Clear",
+                    mRandom.nextInt(10), 10 + mRandom.nextInt(20), mRandom.nextInt(100),
+                    980 + mRandom.nextInt(60), mRandom.nextInt(20), mRandom.nextInt(360));
+        }
+        return batch;
+    }
+
+    /**
+     * @return how long it took to run the query and read every row, in nanoseconds.
+     */
+    private long timeQuery(Uri uri, String selection, String[] selectionArgs) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        Cursor cursor = mResolver.query(uri, null, selection, selectionArgs, null);
+        assertNotNull(cursor);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private static JSONObject summarize(long[] nanos, int count) throws JSONException {
+        JSONObject summary = new JSONObject();
+        summary.put("count", count);
+        if (count == 0) {
+            return summary;
+        }
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long n : sorted) {
+            total += n;
+        }
+        summary.put("meanMicros", total / count / 1000);
+        summary.put("medianMicros", sorted[count / 2] / 1000);
+        summary.put("p95Micros", sorted[count * 95 / 100] / 1000);
+        summary.put("maxMicros", sorted[count - 1] / 1000);
+        return summary;
+    }
+}
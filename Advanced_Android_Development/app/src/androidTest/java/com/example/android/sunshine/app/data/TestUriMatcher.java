@@ -36,6 +36,17 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_LOCATION_NEAREST_DIR =
+            WeatherContract.LocationEntry.buildNearestLocationUri(51.5, -0.12, 5);
+    private static final Uri TEST_LOCATION_SEARCH_DIR =
+            WeatherContract.LocationEntry.buildLocationSearchUri("Lon");
+    // content://com.example.android.sunshine.app/history"
+    private static final Uri TEST_HISTORY_DIR = WeatherContract.HistoryEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/aggregate"
+    private static final Uri TEST_AGGREGATE_DIR = WeatherContract.AggregateEntry.CONTENT_URI;
+    private static final Uri TEST_AGGREGATE_WITH_PERIOD_AND_LOCATION_DIR =
+            WeatherContract.AggregateEntry.buildAggregateLocation(
+                    WeatherContract.AggregateEntry.PERIOD_WEEK, LOCATION_QUERY);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +64,16 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEAREST URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAREST_DIR), WeatherProvider.LOCATION_NEAREST);
+        assertEquals("Error: The LOCATION SEARCH URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_SEARCH_DIR), WeatherProvider.LOCATION_SEARCH);
+        assertEquals("Error: The HISTORY URI was matched incorrectly.",
+                testMatcher.match(TEST_HISTORY_DIR), WeatherProvider.HISTORY);
+        assertEquals("Error: The AGGREGATE URI was matched incorrectly.",
+                testMatcher.match(TEST_AGGREGATE_DIR), WeatherProvider.AGGREGATE);
+        assertEquals("Error: The AGGREGATE WITH PERIOD AND LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_AGGREGATE_WITH_PERIOD_AND_LOCATION_DIR),
+                WeatherProvider.AGGREGATE_WITH_PERIOD_AND_LOCATION);
     }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+
+public class TestWeatherAggregator extends AndroidTestCase {
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final long START_DATE = 1419033600000L;  // December 20th, 2014
+
+    private static final String[] TOTALS_PROJECTION = {
+            "SUM(" + AggregateEntry.COLUMN_COUNT + ")",
+            "SUM(" + AggregateEntry.COLUMN_MAX_TEMP_SUM + ")",
+            "MAX(" + AggregateEntry.COLUMN_MAX_TEMP_MAX + ")",
+            "MIN(" + AggregateEntry.COLUMN_MIN_TEMP_MIN + ")"
+    };
+    // these indices must match the projection
+    private static final int INDEX_COUNT = 0;
+    private static final int INDEX_MAX_TEMP_SUM = 1;
+    private static final int INDEX_MAX_TEMP_MAX = 2;
+    private static final int INDEX_MIN_TEMP_MIN = 3;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mLocationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(AggregateEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /**
+     * @return a forecast of the given days counted from START_DATE, where day i has a high of
+     * i and a low of -i.
+     */
+    private static ForecastBatch buildBatch(int firstDay, int days) {
+        ForecastBatch batch = new ForecastBatch("North Pole", 64.7488, -147.353, days);
+        for (int i = firstDay; i < firstDay + days; i++) {
+            batch.add(WeatherContract.normalizeDate(START_DATE + i * DAY_IN_MILLIS), 800, "Clear",
+                    -i, i, 60, 1010, 3, 180);
+        }
+        return batch;
+    }
+
+    private void insert(ForecastBatch batch) {
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.WeatherEntry.CONTENT_URI);
+        try {
+            WeatherProvider provider = (WeatherProvider) client.getLocalContentProvider();
+            provider.bulkInsert(mLocationId, batch);
+        } finally {
+            client.release();
+        }
+    }
+
+    private void assertTotals(String error, Uri uri, int count, double maxTempSum,
+                              double maxTempMax, double minTempMin) {
+        Cursor cursor = mContext.getContentResolver().query(uri, TOTALS_PROJECTION, null, null,
+                null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(error, count, cursor.getInt(INDEX_COUNT));
+            assertEquals(error, maxTempSum, cursor.getDouble(INDEX_MAX_TEMP_SUM));
+            assertEquals(error, maxTempMax, cursor.getDouble(INDEX_MAX_TEMP_MAX));
+            assertEquals(error, minTempMin, cursor.getDouble(INDEX_MIN_TEMP_MIN));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testSettledDaysAreFoldedOnce() {
+        Uri weeks = AggregateEntry.buildAggregateLocation(
+                AggregateEntry.PERIOD_WEEK, TestUtilities.TEST_LOCATION);
+        Uri months = AggregateEntry.buildAggregateLocation(
+                AggregateEntry.PERIOD_MONTH, TestUtilities.TEST_LOCATION);
+
+        insert(buildBatch(0, 14));
+        assertTotals("Error: days still being forecast were folded", weeks, 0, 0, 0, 0);
+
+        // The next forecast starts a week later, which settles days 0 through 6
+        insert(buildBatch(7, 14));
+        assertTotals("Error: weekly totals don't match the settled days",
+                weeks, 7, 0 + 1 + 2 + 3 + 4 + 5 + 6, 6, -6);
+        assertTotals("Error: monthly totals don't match the settled days",
+                months, 7, 0 + 1 + 2 + 3 + 4 + 5 + 6, 6, -6);
+
+        // Writing the same forecast again doesn't count anything twice
+        insert(buildBatch(7, 14));
+        assertTotals("Error: settled days were folded twice",
+                weeks, 7, 0 + 1 + 2 + 3 + 4 + 5 + 6, 6, -6);
+
+        insert(buildBatch(10, 14));
+        assertTotals("Error: later days were not added to the totals",
+                weeks, 10, 0 + 1 + 2 + 3 + 4 + 5 + 6 + 7 + 8 + 9, 9, -9);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.test.AndroidTestCase;
+
+public class TestWeatherAlertPipeline extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        WeatherAlertPipeline.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        WeatherAlertPipeline.reset();
+        super.tearDown();
+    }
+
+    public void testRepeatedAlertIsSuppressed() {
+        assertEquals("Error: first alert should be posted", WeatherAlertPipeline.RESULT_POST,
+                WeatherAlertPipeline.offer("Storm", "Mountain View", "storm", 0));
+        WeatherAlertPipeline.takeBatch(0);
+
+        assertEquals("Error: repeated alert was not suppressed",
+                WeatherAlertPipeline.RESULT_SUPPRESSED,
+                WeatherAlertPipeline.offer("Storm", "Mountain View", "storm", 1000));
+        assertEquals(1, WeatherAlertPipeline.getSuppressedCount());
+
+        long later = WeatherAlertPipeline.DEDUP_WINDOW_MILLIS;
+        assertEquals("Error: alert was suppressed after the dedup window",
+                WeatherAlertPipeline.RESULT_POST,
+                WeatherAlertPipeline.offer("Storm", "Mountain View", "storm", later));
+    }
+
+    public void testBurstIsBatched() {
+        assertEquals(WeatherAlertPipeline.RESULT_POST,
+                WeatherAlertPipeline.offer("Storm", "Mountain View", "storm", 0));
+        WeatherAlertPipeline.takeBatch(0);
+
+        assertEquals("Error: alert posted within the minimum interval",
+                WeatherAlertPipeline.RESULT_POST_LATER,
+                WeatherAlertPipeline.offer("Snow", "Mountain View", "snow", 1000));
+        assertEquals("Error: only one later post should be scheduled",
+                WeatherAlertPipeline.RESULT_BATCHED,
+                WeatherAlertPipeline.offer("Storm", "London", "london", 2000));
+        assertEquals(WeatherAlertPipeline.MIN_POST_INTERVAL_MILLIS - 2000,
+                WeatherAlertPipeline.getPostDelay(2000));
+
+        WeatherAlertPipeline.Batch batch =
+                WeatherAlertPipeline.takeBatch(WeatherAlertPipeline.MIN_POST_INTERVAL_MILLIS);
+        assertEquals("Error: batch should hold every alert in the window",
+                3, batch.messages.size());
+        assertEquals("Error: newest alert should come first", "london", batch.messages.get(0));
+        assertEquals(3, WeatherAlertPipeline.getReceivedCount());
+        assertEquals(2, WeatherAlertPipeline.getBatchedCount());
+        assertEquals(2, WeatherAlertPipeline.getPostedCount());
+    }
+
+    public void testOldAlertsLeaveTheBatch() {
+        WeatherAlertPipeline.offer("Storm", "Mountain View", "storm", 0);
+        WeatherAlertPipeline.takeBatch(0);
+        long later = WeatherAlertPipeline.DEDUP_WINDOW_MILLIS + 1;
+        assertEquals(WeatherAlertPipeline.RESULT_POST,
+                WeatherAlertPipeline.offer("Snow", "London", "snow", later));
+
+        WeatherAlertPipeline.Batch batch = WeatherAlertPipeline.takeBatch(later);
+        assertEquals(1, batch.messages.size());
+        assertEquals("snow", batch.messages.get(0));
+        assertNull("Error: expired alerts should leave nothing to post",
+                WeatherAlertPipeline.takeBatch(later + WeatherAlertPipeline.DEDUP_WINDOW_MILLIS));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Replays two weeks of app usage against a forecast that drifts at a fixed rate, once with the
+    fixed periodic sync and once with AdaptiveSyncScheduler, and compares how many fetches each
+    makes with how stale the data was whenever the user looked at it.
+ */
+public class TestAdaptiveSyncScheduler extends AndroidTestCase {
+    public static final String LOG_TAG = TestAdaptiveSyncScheduler.class.getSimpleName();
+
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000;
+    private static final int SIMULATED_DAYS = 14;
+
+    static class SimulationResult {
+        int fetches;
+        long totalStalenessMillis;
+        int opens;
+
+        long meanStalenessMinutes() {
+            return opens == 0 ? 0 : totalStalenessMillis / opens / (60 * 1000);
+        }
+
+        @Override
+        public String toString() {
+            return fetches + " fetches, mean staleness " + meanStalenessMinutes() + " min";
+        }
+    }
+
+    /**
+     * @param opensPerDay how many evenly spaced app opens the trace has each day
+     * @param changePerHour how fast the forecast drifts, in change score per hour since the
+     *                      last sync
+     * @param adaptive whether to use the adaptive interval or the fixed one
+     */
+    private SimulationResult simulate(int opensPerDay, double changePerHour, boolean adaptive) {
+        List<Long> opens = new ArrayList<>();
+        if (opensPerDay > 0) {
+            long spacing = 24 * HOUR_IN_MILLIS / opensPerDay;
+            for (long t = spacing / 2; t < SIMULATED_DAYS * 24 * HOUR_IN_MILLIS; t += spacing) {
+                opens.add(t);
+            }
+        }
+
+        SimulationResult result = new SimulationResult();
+        List<Double> changes = new ArrayList<>();
+        List<Long> seenOpens = new ArrayList<>();
+        long end = SIMULATED_DAYS * 24 * HOUR_IN_MILLIS;
+        long lastSync = 0;
+        long nextSync = 0;
+        int nextOpen = 0;
+        while (true) {
+            long nextOpenTime = nextOpen < opens.size() ? opens.get(nextOpen) : Long.MAX_VALUE;
+            if (Math.min(nextSync, nextOpenTime) >= end) {
+                break;
+            }
+            if (nextOpenTime < nextSync) {
+                result.opens++;
+                result.totalStalenessMillis += nextOpenTime - lastSync;
+                seenOpens.add(nextOpenTime);
+                nextOpen++;
+                continue;
+            }
+
+            result.fetches++;
+            if (result.fetches > 1) {
+                changes.add(changePerHour * (nextSync - lastSync) / HOUR_IN_MILLIS);
+                if (changes.size() > 8) {
+                    changes.remove(0);
+                }
+            }
+            lastSync = nextSync;
+
+            int interval = SunshineSyncAdapter.SYNC_INTERVAL;
+            if (adaptive) {
+                interval = AdaptiveSyncScheduler.computeSyncInterval(
+                        AdaptiveSyncScheduler.mean(toDoubles(changes)),
+                        AdaptiveSyncScheduler.opensPerDay(toLongs(seenOpens), lastSync));
+                assertTrue("Error: interval below minimum: " + interval,
+                        interval >= AdaptiveSyncScheduler.MIN_SYNC_INTERVAL);
+                assertTrue("Error: interval above maximum: " + interval,
+                        interval <= AdaptiveSyncScheduler.MAX_SYNC_INTERVAL);
+            }
+            nextSync = lastSync + interval * 1000L;
+        }
+        return result;
+    }
+
+    public void testIdleUserStableForecastFetchesLess() {
+        SimulationResult fixed = simulate(0, 0.05, false);
+        SimulationResult adaptive = simulate(0, 0.05, true);
+        Log.d(LOG_TAG, "Idle, stable: fixed " + fixed + "; adaptive " + adaptive);
+
+        assertTrue("Error: adaptive sync did not cut fetches for an idle user",
+                adaptive.fetches < fixed.fetches / 2);
+    }
+
+    public void testBusyUserVolatileForecastIsFresher() {
+        SimulationResult fixed = simulate(12, 1.0, false);
+        SimulationResult adaptive = simulate(12, 1.0, true);
+        Log.d(LOG_TAG, "Busy, volatile: fixed " + fixed + "; adaptive " + adaptive);
+
+        assertTrue("Error: adaptive sync was not fresher for a busy user",
+                adaptive.meanStalenessMinutes() < fixed.meanStalenessMinutes());
+    }
+
+    public void testTypicalUserKeepsBaseInterval() {
+        assertEquals("Error: typical usage should keep the base interval",
+                SunshineSyncAdapter.SYNC_INTERVAL,
+                AdaptiveSyncScheduler.computeSyncInterval(AdaptiveSyncScheduler.TYPICAL_CHANGE,
+                        AdaptiveSyncScheduler.TYPICAL_OPENS_PER_DAY));
+    }
+
+    private static double[] toDoubles(List<Double> list) {
+        double[] values = new double[list.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = list.get(i);
+        }
+        return values;
+    }
+
+    private static long[] toLongs(List<Long> list) {
+        long[] values = new long[list.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = list.get(i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Runs ForecastFetcher against a one-shot HTTP server on localhost that serves the same
+    forecast fixture plain, gzipped and deflated.
+ */
+public class TestForecastFetcher extends AndroidTestCase {
+
+    private static final String FIXTURE;
+    static {
+        // Non-ASCII city and descriptions make sure we really decode as UTF-8
+        StringBuilder json = new StringBuilder("{\"city\":{\"name\":\"São Paulo\"},\"list\":[");
+        for (int i = 0; i < 14; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"temp\":{\"min\":18.5,\"max\":27.25},\"weather\":[{\"id\":500,")
+                    .append("\"description\":\"chuva fraca ☂\"}]}");
+        }
+        FIXTURE = json.append("]}").toString();
+    }
+
+    /**
+     * Serves a single response on a background thread and remembers the request's
+     * Accept-Encoding header.
+     */
+    private static class StandInServer extends Thread {
+        private final ServerSocket mServerSocket;
+        private final byte[] mBody;
+        private final String mContentEncoding;
+        volatile String acceptEncoding;
+
+        StandInServer(byte[] body, String contentEncoding) throws IOException {
+            mServerSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+            mBody = body;
+            mContentEncoding = contentEncoding;
+        }
+
+        URL getUrl() throws IOException {
+            return new URL("http://127.0.0.1:" + mServerSocket.getLocalPort() + "/forecast");
+        }
+
+        @Override
+        public void run() {
+            try {
+                Socket socket = mServerSocket.accept();
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+                String line;
+                while ((line = in.readLine()) != null && line.length() > 0) {
+                    if (line.toLowerCase().startsWith("accept-encoding:")) {
+                        acceptEncoding = line.substring(line.indexOf(':') + 1).trim();
+                    }
+                }
+                StringBuilder headers = new StringBuilder("HTTP/1.1 200 OK\r\n")
+                        .append("Content-Type: application/json; charset=utf-8\r\n")
+                        .append("Content-Length: ").append(mBody.length).append("\r\n")
+                        .append("Connection: close\r\n");
+                if (mContentEncoding != null) {
+                    headers.append("Content-Encoding: ").append(mContentEncoding).append("\r\n");
+                }
+                headers.append("\r\n");
+                OutputStream out = socket.getOutputStream();
+                out.write(headers.toString().getBytes("US-ASCII"));
+                out.write(mBody);
+                out.flush();
+                socket.close();
+            } catch (IOException e) {
+                // The fetch on the test thread will fail and report it
+            } finally {
+                try {
+                    mServerSocket.close();
+                } catch (IOException e) {
+                    // Nothing more to do
+                }
+            }
+        }
+    }
+
+    private ForecastFetcher.Response fetch(byte[] body, String contentEncoding, StandInServer[] out)
+            throws Exception {
+        StandInServer server = new StandInServer(body, contentEncoding);
+        server.start();
+        ForecastFetcher.Response response = new ForecastFetcher().fetch(server.getUrl());
+        server.join(5000);
+        out[0] = server;
+        return response;
+    }
+
+    public void testUncompressed() throws Exception {
+        byte[] plain = FIXTURE.getBytes("UTF-8");
+        StandInServer[] server = new StandInServer[1];
+        ForecastFetcher.Response response = fetch(plain, null, server);
+
+        assertEquals("Error: body was not decoded as UTF-8", FIXTURE, response.body);
+        assertEquals(plain.length, response.wireBytes);
+        assertEquals(plain.length, response.decodedBytes);
+        assertNotNull("Error: compression was not requested", server[0].acceptEncoding);
+        assertTrue(server[0].acceptEncoding.contains("gzip"));
+    }
+
+    public void testGzip() throws Exception {
+        byte[] plain = FIXTURE.getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(plain);
+        gzip.close();
+
+        ForecastFetcher.Response response =
+                fetch(compressed.toByteArray(), "gzip", new StandInServer[1]);
+
+        assertEquals("Error: gzip body was not decoded", FIXTURE, response.body);
+        assertEquals(compressed.size(), response.wireBytes);
+        assertEquals(plain.length, response.decodedBytes);
+        assertTrue("Error: gzip did not save any bytes", response.wireBytes < response.decodedBytes);
+    }
+
+    public void testDeflate() throws Exception {
+        byte[] plain = FIXTURE.getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(compressed);
+        deflate.write(plain);
+        deflate.close();
+
+        ForecastFetcher.Response response =
+                fetch(compressed.toByteArray(), "deflate", new StandInServer[1]);
+
+        assertEquals("Error: deflate body was not decoded", FIXTURE, response.body);
+        assertEquals(compressed.size(), response.wireBytes);
+        assertEquals(plain.length, response.decodedBytes);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class TestForecastSource extends AndroidTestCase {
+
+    static final String OWM_FIXTURE = "{\"cod\":\"200\",\"city\":{\"name\":\"Mountain View\","
+            + "\"coord\":{\"lat\":37.3861,\"lon\":-122.0839}},\"list\":["
+            + "{\"pressure\":1017.5,\"humidity\":72,\"speed\":3.1,\"deg\":270,"
+            + "\"temp\":{\"min\":9.5,\"max\":21.25},\"weather\":[{\"id\":800,\"main\":\"Clear\"}]},"
+            + "{\"pressure\":1012.0,\"humidity\":90,\"speed\":6.4,\"deg\":180,"
+            + "\"temp\":{\"min\":11.0,\"max\":15.5},\"weather\":[{\"id\":501,\"main\":\"Rain\"}]}"
+            + "]}";
+
+    public void testOwmParse() throws Exception {
+        ForecastBatch batch = new OwmForecastSource().parse(OWM_FIXTURE);
+
+        assertEquals("Mountain View", batch.getCityName());
+        assertEquals(37.3861, batch.getCityLatitude());
+        assertEquals(2, batch.size());
+        assertEquals(800, batch.getWeatherId(0));
+        assertEquals("Rain", batch.getDescription(1));
+        assertEquals(21.25, batch.getMaxTemp(0));
+        assertEquals(11.0, batch.getMinTemp(1));
+        assertEquals(90, batch.getHumidity(1));
+        assertEquals("Error: days should be a day apart",
+                batch.getDate(0) + 24 * 60 * 60 * 1000, batch.getDate(1));
+        assertEquals("Error: dates should be normalized",
+                WeatherContract.normalizeDate(batch.getDate(0)), batch.getDate(0));
+    }
+
+    public void testOwmUnknownLocation() throws Exception {
+        try {
+            new OwmForecastSource().parse("{\"cod\":\"404\",\"message\":\"Error\"}");
+            fail("Error: an unknown location should be reported");
+        } catch (ForecastSource.InvalidLocationException expected) {
+        }
+    }
+
+    public void testOwmServerError() throws Exception {
+        try {
+            new OwmForecastSource().parse("{\"cod\":\"500\",\"message\":\"Error\"}");
+            fail("Error: a server error should be reported");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testFixtureSource() throws Exception {
+        File file = new File(mContext.getCacheDir(), FixtureForecastSource.FIXTURE_FILE_NAME);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(OWM_FIXTURE.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        FixtureForecastSource source = new FixtureForecastSource(file);
+        String payload = source.load(mContext);
+        assertEquals(OWM_FIXTURE, payload);
+        assertEquals(2, source.parse(payload).size());
+        file.delete();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+public class TestSyncGate extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SyncGate.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SyncGate.reset();
+        super.tearDown();
+    }
+
+    public void testBurstIsCoalesced() {
+        assertTrue("Error: first request should go through", SyncGate.tryAcquire("94043", 0));
+        assertFalse(SyncGate.tryAcquire("94043", 10));
+        assertFalse(SyncGate.tryAcquire("94043", 20));
+        assertEquals("Error: burst was not coalesced", 2, SyncGate.getCoalescedCount());
+
+        assertTrue("Error: another location should not be coalesced",
+                SyncGate.tryAcquire("London", 30));
+    }
+
+    public void testFreshDataSuppressesFetch() {
+        assertTrue(SyncGate.tryAcquire("94043", 0));
+        SyncGate.onSyncFinished("94043", true, 1000);
+
+        assertFalse("Error: fetched within the freshness window",
+                SyncGate.tryAcquire("94043", 1000 + SyncGate.FRESHNESS_WINDOW_MILLIS - 1));
+        assertEquals(1, SyncGate.getSuppressedCount());
+        assertTrue("Error: stale data was not refetched",
+                SyncGate.tryAcquire("94043", 1000 + SyncGate.FRESHNESS_WINDOW_MILLIS));
+    }
+
+    public void testFailedSyncDoesNotBlockRetry() {
+        assertTrue(SyncGate.tryAcquire("94043", 0));
+        SyncGate.onSyncFinished("94043", false, 1000);
+        assertTrue("Error: a failed sync should not make data fresh",
+                SyncGate.tryAcquire("94043", 2000));
+    }
+
+    public void testAbandonedRequestExpires() {
+        assertTrue(SyncGate.tryAcquire("94043", 0));
+        assertTrue("Error: a sync that never ran blocked requests forever",
+                SyncGate.tryAcquire("94043", SyncGate.IN_FLIGHT_TIMEOUT_MILLIS));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.util.Random;
+
+public class TestSyncRetryScheduler extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SyncRetryScheduler.reset(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SyncRetryScheduler.reset(mContext);
+        super.tearDown();
+    }
+
+    /*
+        Every delay should land between half and all of the capped exponential delay for its
+        attempt, and the cap should hold no matter how many attempts we make.
+     */
+    public void testBackoffIsCappedAndJittered() {
+        Random random = new Random(42);
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            long expected = Math.min(SyncRetryScheduler.BASE_DELAY_MILLIS << Math.min(attempt - 1, 16),
+                    SyncRetryScheduler.MAX_DELAY_MILLIS);
+            for (int i = 0; i < 100; i++) {
+                long delay = SyncRetryScheduler.computeDelayMillis(attempt, random);
+                assertTrue("Error: retry " + attempt + " came too soon: " + delay,
+                        delay >= expected / 2);
+                assertTrue("Error: retry " + attempt + " waited too long: " + delay,
+                        delay <= expected);
+            }
+        }
+    }
+
+    public void testBackoffGrows() {
+        Random random = new Random(7);
+        long previousMax = 0;
+        for (int attempt = 1; attempt <= 6; attempt++) {
+            long max = 0;
+            for (int i = 0; i < 100; i++) {
+                max = Math.max(max, SyncRetryScheduler.computeDelayMillis(attempt, random));
+            }
+            assertTrue("Error: retry " + attempt + " did not back off", max > previousMax);
+            previousMax = max;
+        }
+    }
+
+    public void testRetryIsScheduledAndCleared() {
+        long before = System.currentTimeMillis();
+        SyncRetryScheduler.onSyncFailed(mContext);
+        assertEquals(1, SyncRetryScheduler.getPendingAttempts(mContext));
+        assertTrue("Error: no alarm was set for the retry",
+                SyncRetryScheduler.isAlarmSet(mContext));
+        long nextRetry = SyncRetryScheduler.getNextRetryMillis(mContext);
+        assertTrue("Error: retry was not scheduled after the first backoff delay",
+                nextRetry >= before + SyncRetryScheduler.BASE_DELAY_MILLIS / 2);
+
+        SyncRetryScheduler.onSyncSucceeded(mContext);
+        assertEquals(0, SyncRetryScheduler.getPendingAttempts(mContext));
+        assertEquals(-1, SyncRetryScheduler.getNextRetryMillis(mContext));
+        assertFalse("Error: alarm outlived the recovery", SyncRetryScheduler.isAlarmSet(mContext));
+        assertEquals(1, SyncRetryScheduler.getRecoveryCount(mContext));
+    }
+
+    /*
+        A reboot clears every alarm but not the saved retry, which should be armed again.
+     */
+    /*
+        After giving up, the next failure should start backing off from the first delay again
+        rather than giving up straight away.
+     */
+    public void testGivingUpStartsOver() {
+        for (int i = 0; i <= SyncRetryScheduler.MAX_ATTEMPTS; i++) {
+            SyncRetryScheduler.onSyncFailed(mContext);
+        }
+        assertEquals("Error: attempts were kept after giving up",
+                0, SyncRetryScheduler.getPendingAttempts(mContext));
+        assertFalse(SyncRetryScheduler.isAlarmSet(mContext));
+
+        SyncRetryScheduler.onSyncFailed(mContext);
+        assertEquals(1, SyncRetryScheduler.getPendingAttempts(mContext));
+        assertTrue("Error: a failure after giving up was not retried",
+                SyncRetryScheduler.isAlarmSet(mContext));
+    }
+
+    public void testRetryIsRearmedAfterReboot() {
+        SyncRetryScheduler.onSyncFailed(mContext);
+        long nextRetry = SyncRetryScheduler.getNextRetryMillis(mContext);
+        SyncRetryScheduler.cancelAlarm(mContext);
+        assertFalse(SyncRetryScheduler.isAlarmSet(mContext));
+
+        assertTrue("Error: pending retry was not found", SyncRetryScheduler.rearm(mContext));
+        assertTrue("Error: alarm was not set again", SyncRetryScheduler.isAlarmSet(mContext));
+        assertEquals("Error: rearming moved the retry",
+                nextRetry, SyncRetryScheduler.getNextRetryMillis(mContext));
+    }
+
+    public void testNothingToRearm() {
+        assertFalse(SyncRetryScheduler.rearm(mContext));
+        assertFalse(SyncRetryScheduler.isAlarmSet(mContext));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+public class TestTodaySummaryPublisher extends AndroidTestCase {
+    private static final long TEST_DAY = 1419033600L;
+
+    private static TodaySummaryPublisher.TodaySummary createSummary(double high, boolean metric) {
+        return new TodaySummaryPublisher.TodaySummary(0, "99705", TEST_DAY, TEST_DAY, 321,
+                "Asteroids", high, 1.3, metric);
+    }
+
+    public void testSameWeatherKeepsVersion() {
+        TodaySummaryPublisher.TodaySummary previous = createSummary(75, true).withVersion(4);
+        assertEquals("Error: republishing the same weather changed the version", 4,
+                TodaySummaryPublisher.nextVersion(createSummary(75, true), previous, 4));
+    }
+
+    public void testChangedWeatherBumpsVersion() {
+        TodaySummaryPublisher.TodaySummary previous = createSummary(75, true).withVersion(4);
+        assertEquals(5, TodaySummaryPublisher.nextVersion(createSummary(76, true), previous, 4));
+        assertEquals("Error: the first summary should get a new version", 5,
+                TodaySummaryPublisher.nextVersion(createSummary(75, true), null, 4));
+    }
+
+    public void testChangedUnitsBumpVersion() {
+        TodaySummaryPublisher.TodaySummary previous = createSummary(75, true).withVersion(4);
+        assertEquals("Error: the summary shown in other units kept its version", 5,
+                TodaySummaryPublisher.nextVersion(createSummary(75, false), previous, 4));
+    }
+}
@@ -29,9 +29,16 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.bumptech.glide.DrawableRequestBuilder;
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
@@ -49,6 +56,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private int mTodayIconSize;
+    final private int mListIconSize;
+    // Icon preloads for the current cursor, by url and size, so they can be cleared
+    final private Map<String, Target<?>> mIconPreloads = new HashMap<>();
 
     /**
      * Cache of the children views for a forecast list item.
@@ -90,6 +101,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mTodayIconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mListIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
     }
 
     /*
@@ -127,23 +140,26 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mCursor.moveToPosition(position);
         int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
+        int iconSize;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
                 defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                iconSize = mTodayIconSize;
                 useLongToday = true;
                 break;
             default:
                 defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                iconSize = mListIconSize;
                 useLongToday = false;
         }
 
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            loadIcon(artUrl, iconSize)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -214,10 +230,61 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
+        prefetchIcons();
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * Starts loading a row's icon.  Rows and preloads both go through here, so that a preloaded
+     * icon has the same size and transformation, and so the same memory cache key, as the row
+     * that shows it.
+     */
+    private DrawableRequestBuilder<String> loadIcon(String artUrl, int iconSize) {
+        return Glide.with(mContext)
+                .load(artUrl)
+                .override(iconSize, iconSize)
+                .fitCenter();
+    }
+
+    /**
+     * Warms Glide's memory cache with every distinct piece of condition artwork in the current
+     * cursor, at the size each row will show it, so that binding rows never has to wait on the
+     * network.
+     */
+    private void prefetchIcons() {
+        if (null == mCursor || Utility.usingLocalGraphics(mContext)) {
+            return;
+        }
+        int count = mCursor.getCount();
+        Set<String> preloaded = new HashSet<>();
+        for (int position = 0; position < count; position++) {
+            mCursor.moveToPosition(position);
+            int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            int iconSize = getItemViewType(position) == VIEW_TYPE_TODAY
+                    ? mTodayIconSize : mListIconSize;
+            String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            if (artUrl == null) {
+                continue;
+            }
+            String key = artUrl + '@' + iconSize;
+            if (preloaded.add(key)) {
+                // A preload releases its icon to the memory cache once it is ready
+                mIconPreloads.put(key, loadIcon(artUrl, iconSize).preload(iconSize, iconSize));
+            }
+        }
+    }
+
+    /**
+     * Call when the list goes away, so icons it asked for don't keep loading.
+     */
+    public void cancelIconPrefetches() {
+        for (Target<?> preload : mIconPreloads.values()) {
+            Glide.clear(preload);
+        }
+        mIconPreloads.clear();
+    }
+
     public Cursor getCursor() {
         return mCursor;
     }
@@ -381,6 +381,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if (null != mRecyclerView) {
             mRecyclerView.clearOnScrollListeners();
         }
+        if (null != mForecastAdapter) {
+            mForecastAdapter.cancelIconPrefetches();
+        }
     }
 
     @Override
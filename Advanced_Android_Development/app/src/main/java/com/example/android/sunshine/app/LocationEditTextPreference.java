@@ -19,16 +19,26 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.res.TypedArray;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FilterQueryProvider;
+import android.widget.ListView;
+import android.widget.SimpleCursorAdapter;
+
+import com.example.android.sunshine.app.data.WeatherContract;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -40,6 +50,17 @@ public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
     private int mMinLength;
 
+    private static final String[] SUGGESTION_COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+    };
+    // these indices must match the projection
+    private static final int COL_SUGGESTION_LOCATION_SETTING = 2;
+
+    // Saved locations matching what has been typed so far
+    private SimpleCursorAdapter mSuggestionAdapter;
+
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.getTheme().obtainStyledAttributes(
@@ -103,6 +124,80 @@ public class LocationEditTextPreference extends EditTextPreference {
         return view;
     }
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, final EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+
+        // Offer the locations we already have, so the user doesn't have to type them out again
+        mSuggestionAdapter = new SimpleCursorAdapter(getContext(),
+                android.R.layout.simple_list_item_2, null,
+                new String[]{WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                new int[]{android.R.id.text1, android.R.id.text2}, 0) {
+            @Override
+            public void changeCursor(Cursor cursor) {
+                if (mSuggestionAdapter != this) {
+                    // A filter result that came in after the dialog was dismissed
+                    if (cursor != null) {
+                        cursor.close();
+                    }
+                    return;
+                }
+                super.changeCursor(cursor);
+            }
+        };
+        mSuggestionAdapter.setFilterQueryProvider(new FilterQueryProvider() {
+            @Override
+            public Cursor runQuery(CharSequence constraint) {
+                // Runs on the filter's worker thread
+                if (TextUtils.isEmpty(constraint)) {
+                    return null;
+                }
+                return getContext().getContentResolver().query(
+                        WeatherContract.LocationEntry.buildLocationSearchUri(constraint.toString()),
+                        SUGGESTION_COLUMNS, null, null, null);
+            }
+        });
+
+        ListView suggestions = new ListView(getContext());
+        suggestions.setAdapter(mSuggestionAdapter);
+        suggestions.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                Cursor cursor = (Cursor) parent.getItemAtPosition(position);
+                editText.setText(cursor.getString(COL_SUGGESTION_LOCATION_SETTING));
+                editText.setSelection(editText.length());
+            }
+        });
+        // The dialog puts its view in a ScrollView, where a list that wraps its content only
+        // gets room for one row.  Give it a fixed height, and let it scroll itself.
+        suggestions.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                v.getParent().requestDisallowInterceptTouchEvent(
+                        event.getActionMasked() != MotionEvent.ACTION_UP
+                                && event.getActionMasked() != MotionEvent.ACTION_CANCEL);
+                return false;
+            }
+        });
+        ((ViewGroup) editText.getParent()).addView(suggestions, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, getContext().getResources()
+                        .getDimensionPixelSize(R.dimen.location_suggestions_height)));
+    }
+
+    @Override
+    public void onDismiss(DialogInterface dialog) {
+        super.onDismiss(dialog);
+        if (mSuggestionAdapter != null) {
+            // Drops any filtering still queued; a query already running is closed by
+            // changeCursor once the adapter is released
+            mSuggestionAdapter.getFilter().filter(null);
+            // Closes the last cursor
+            mSuggestionAdapter.changeCursor(null);
+            mSuggestionAdapter = null;
+        }
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
@@ -136,6 +231,9 @@ public class LocationEditTextPreference extends EditTextPreference {
                         positiveButton.setEnabled(true);
                     }
                 }
+                if (mSuggestionAdapter != null) {
+                    mSuggestionAdapter.getFilter().filter(s);
+                }
             }
         });
     }
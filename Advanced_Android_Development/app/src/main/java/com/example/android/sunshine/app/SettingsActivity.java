@@ -18,6 +18,8 @@ package com.example.android.sunshine.app;
 import android.annotation.TargetApi;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
@@ -46,7 +48,11 @@ import com.google.android.gms.maps.model.LatLng;
 public class SettingsActivity extends PreferenceActivity
         implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener {
     protected final static int PLACE_PICKER_REQUEST = 9090;
+    // A picked place this close to a saved location shares its forecast
+    private static final double NEARBY_LOCATION_KM = 2;
     private ImageView mAttribution;
+    // Set while SavePickedPlaceTask stores the picked place
+    private boolean mSavingPickedPlace;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -59,6 +65,7 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_history_size_key)));
 
 
         // If we are using a PlacePicker location, we need to show attributions.
@@ -154,6 +161,10 @@ public class SettingsActivity extends PreferenceActivity
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if ( key.equals(getString(R.string.pref_location_key)) ) {
+            if (mSavingPickedPlace) {
+                // SavePickedPlaceTask updates everything itself
+                return;
+            }
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             SharedPreferences.Editor editor = sharedPreferences.edit();
@@ -187,6 +198,96 @@ public class SettingsActivity extends PreferenceActivity
         return super.getParentActivityIntent().addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
     }
 
+    private static final String[] NEARBY_LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    // these indices must match the projection
+    private static final int COL_NEARBY_LOCATION_SETTING = 0;
+    private static final int COL_NEARBY_COORD_LAT = 1;
+    private static final int COL_NEARBY_COORD_LONG = 2;
+
+    /**
+     * Saves a place picked with the PlacePicker as the location, then updates the screen and
+     * syncs.  If we already have a location within {@link #NEARBY_LOCATION_KM} of the place, that
+     * location is saved instead, so we don't keep a second copy of the same forecast under
+     * another name.  Finding it takes a provider query, so that part runs off the main thread.
+     */
+    private class SavePickedPlaceTask extends AsyncTask<Void, Void, Void> {
+        private String mAddress;
+        private double mLatitude;
+        private double mLongitude;
+
+        SavePickedPlaceTask(String address, LatLng latLong) {
+            mAddress = address;
+            mLatitude = latLong.latitude;
+            mLongitude = latLong.longitude;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            Cursor cursor = getContentResolver().query(
+                    WeatherContract.LocationEntry.buildNearestLocationUri(
+                            mLatitude, mLongitude, NEARBY_LOCATION_KM),
+                    NEARBY_LOCATION_COLUMNS, null, null, null);
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                if (cursor.moveToFirst()) {
+                    // Sync the saved location, not the picked place next to it
+                    mAddress = cursor.getString(COL_NEARBY_LOCATION_SETTING);
+                    mLatitude = cursor.getDouble(COL_NEARBY_COORD_LAT);
+                    mLongitude = cursor.getDouble(COL_NEARBY_COORD_LONG);
+                }
+            } finally {
+                cursor.close();
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            SharedPreferences sharedPreferences =
+                    PreferenceManager.getDefaultSharedPreferences(SettingsActivity.this);
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            editor.putString(getString(R.string.pref_location_key), mAddress);
+
+            // Also store the latitude and longitude so that we can use these to get a precise
+            // result from our weather service. We cannot expect the weather service to
+            // understand addresses that Google formats.
+            editor.putFloat(getString(R.string.pref_location_latitude), (float) mLatitude);
+            editor.putFloat(getString(R.string.pref_location_longitude), (float) mLongitude);
+
+            // We are resumed by now, so keep our listener from wiping out the latlng we just
+            // stored.  It is called from within commit() since we are on the main thread.
+            mSavingPickedPlace = true;
+            editor.commit();
+            mSavingPickedPlace = false;
+
+            // Tell the SyncAdapter that we've changed the location, so that we can update
+            // our UI with new values. We need to do this manually because we are responding
+            // to the PlacePicker widget result here instead of allowing the
+            // LocationEditTextPreference to handle these changes and invoke our callbacks.
+            Preference locationPreference = findPreference(getString(R.string.pref_location_key));
+            setPreferenceSummary(locationPreference, mAddress);
+
+            // Add attributions for our new PlacePicker location.
+            if (mAttribution != null) {
+                mAttribution.setVisibility(View.VISIBLE);
+            } else {
+                // For pre-Honeycomb devices, we cannot add a footer, so we will use a snackbar
+                View rootView = findViewById(android.R.id.content);
+                Snackbar.make(rootView, getString(R.string.attribution_text),
+                        Snackbar.LENGTH_LONG).show();
+            }
+
+            Utility.resetLocationStatus(SettingsActivity.this);
+            SunshineSyncAdapter.syncImmediately(SettingsActivity.this);
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         // Check to see if the result is from our Place Picker intent
@@ -203,39 +304,7 @@ public class SettingsActivity extends PreferenceActivity
                     address = String.format("(%.2f, %.2f)",latLong.latitude, latLong.longitude);
                 }
 
-                SharedPreferences sharedPreferences =
-                        PreferenceManager.getDefaultSharedPreferences(this);
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putString(getString(R.string.pref_location_key), address);
-
-                // Also store the latitude and longitude so that we can use these to get a precise
-                // result from our weather service. We cannot expect the weather service to
-                // understand addresses that Google formats.
-                editor.putFloat(getString(R.string.pref_location_latitude),
-                        (float) latLong.latitude);
-                editor.putFloat(getString(R.string.pref_location_longitude),
-                        (float) latLong.longitude);
-                editor.commit();
-
-                // Tell the SyncAdapter that we've changed the location, so that we can update
-                // our UI with new values. We need to do this manually because we are responding
-                // to the PlacePicker widget result here instead of allowing the
-                // LocationEditTextPreference to handle these changes and invoke our callbacks.
-                Preference locationPreference = findPreference(getString(R.string.pref_location_key));
-                setPreferenceSummary(locationPreference, address);
-
-                // Add attributions for our new PlacePicker location.
-                if (mAttribution != null) {
-                    mAttribution.setVisibility(View.VISIBLE);
-                } else {
-                    // For pre-Honeycomb devices, we cannot add a footer, so we will use a snackbar
-                    View rootView = findViewById(android.R.id.content);
-                    Snackbar.make(rootView, getString(R.string.attribution_text),
-                            Snackbar.LENGTH_LONG).show();
-                }
-
-                Utility.resetLocationStatus(this);
-                SunshineSyncAdapter.syncImmediately(this);
+                new SavePickedPlaceTask(address, latLong).execute();
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data);
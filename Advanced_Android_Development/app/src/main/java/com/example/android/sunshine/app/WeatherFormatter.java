@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The formatting behind Utility's display helpers: temperatures, wind, day names and weather
+ * descriptions, for every list row, widget row and notification.
+ *
+ * Every localized string comes in through the constructor, resolved once by
+ * {@link Utility#getFormatter}, so this class is plain Java.  Keep it that way: the benchmark
+ * module compiles this file on its own and runs it on a desktop JVM.
+ */
+public class WeatherFormatter {
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    // Julian day of the epoch, as in android.text.format.Time
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+
+    /**
+     * The OpenWeatherMap condition ids with a description of their own, in ascending order.  All
+     * of 2xx and all of 3xx share one description each.
+     *
+     * @see <a href="http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes">
+     *     Weather Condition Codes</a>
+     */
+    public static final int[] CONDITION_IDS = {
+            500, 501, 502, 503, 504, 511, 520, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906,
+            951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962
+    };
+
+    private static final String[] COMPASS_DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private final Locale mLocale;
+    private final boolean mMetric;
+    // The date formats take the default time zone when they are made
+    private final String mTimeZoneId;
+
+    private final String mTemperatureFormat;
+    private final String mWindFormat;
+    private final String mToday;
+    private final String mTomorrow;
+    private final String mFullFriendlyDateFormat;
+    private final String mStormCondition;
+    private final String mDrizzleCondition;
+    private final String mUnknownConditionFormat;
+    private final String[] mConditionNames;
+
+    // SimpleDateFormat isn't thread safe, so these are only used while holding the lock on this
+    private final SimpleDateFormat mDayNameFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+    private final SimpleDateFormat mShortDateFormat;
+
+    /**
+     * @param windFormat the wind format for the unit system in use: speed, then direction
+     * @param conditionNames the descriptions of {@link #CONDITION_IDS}, in the same order
+     */
+    public WeatherFormatter(Locale locale, boolean metric, String temperatureFormat,
+                            String windFormat, String today, String tomorrow,
+                            String fullFriendlyDateFormat, String stormCondition,
+                            String drizzleCondition, String unknownConditionFormat,
+                            String[] conditionNames) {
+        if (conditionNames.length != CONDITION_IDS.length) {
+            throw new IllegalArgumentException("Expected " + CONDITION_IDS.length
+                    + " condition names, got " + conditionNames.length);
+        }
+        mLocale = locale;
+        mMetric = metric;
+        mTemperatureFormat = temperatureFormat;
+        mWindFormat = windFormat;
+        mToday = today;
+        mTomorrow = tomorrow;
+        mFullFriendlyDateFormat = fullFriendlyDateFormat;
+        mStormCondition = stormCondition;
+        mDrizzleCondition = drizzleCondition;
+        mUnknownConditionFormat = unknownConditionFormat;
+        mConditionNames = conditionNames.clone();
+
+        mTimeZoneId = TimeZone.getDefault().getID();
+        mDayNameFormat = new SimpleDateFormat("EEEE", locale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+    }
+
+    /**
+     * @return true if this formatter was built for the given settings.
+     */
+    public boolean matches(Locale locale, boolean metric, String timeZoneId) {
+        return mMetric == metric && mLocale.equals(locale) && mTimeZoneId.equals(timeZoneId);
+    }
+
+    public String formatTemperature(double temperature) {
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        if (!mMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return String.format(mLocale, mTemperatureFormat, temperature);
+    }
+
+    public String formatWind(float windSpeed, float degrees) {
+        if (!mMetric) {
+            windSpeed = .621371192237334f * windSpeed;
+        }
+        return String.format(mLocale, mWindFormat, windSpeed, getCompassDirection(degrees));
+    }
+
+    /**
+     * @return the compass direction the wind is coming from, e.g "NW".
+     */
+    static String getCompassDirection(float degrees) {
+        if (Float.isNaN(degrees)) {
+            return "Unknown";
+        } else if (degrees >= 337.5f || degrees < 22.5f) {
+            return "N";
+        }
+        // Each direction covers 45 degrees, centered on its bearing
+        return COMPASS_DIRECTIONS[(int) ((degrees + 22.5f) / 45)];
+    }
+
+    /**
+     * The day string for forecast uses the following logic:
+     * For today: "Today, June 8"
+     * For tomorrow:  "Tomorrow"
+     * For the next 5 days: "Wednesday" (just the day name)
+     * For all days after that: "Mon Jun 8"
+     *
+     * @param now the current time, which decides what today is
+     */
+    public String getFriendlyDayString(long dateInMillis, long now, boolean displayLongToday) {
+        long gmtoff = getGmtOffsetSeconds(now);
+        int julianDay = getJulianDay(dateInMillis, gmtoff);
+        int currentJulianDay = getJulianDay(now, gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return String.format(mLocale, mFullFriendlyDateFormat, mToday,
+                    getFormattedMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            // If the input date is less than a week in the future, just return the day name.
+            return getDayName(dateInMillis, now);
+        } else {
+            synchronized (this) {
+                return mShortDateFormat.format(dateInMillis);
+            }
+        }
+    }
+
+    /**
+     * @return the day name and date, e.g "Tomorrow, June 24".
+     */
+    public String getFullFriendlyDayString(long dateInMillis, long now) {
+        return String.format(mLocale, mFullFriendlyDateFormat, getDayName(dateInMillis, now),
+                getFormattedMonthDay(dateInMillis));
+    }
+
+    /**
+     * @return just the name to use for that day, e.g "Today", "Tomorrow", "Wednesday".
+     */
+    public String getDayName(long dateInMillis, long now) {
+        long gmtoff = getGmtOffsetSeconds(now);
+        int julianDay = getJulianDay(dateInMillis, gmtoff);
+        int currentJulianDay = getJulianDay(now, gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mToday;
+        } else if (julianDay == currentJulianDay + 1) {
+            return mTomorrow;
+        }
+        synchronized (this) {
+            return mDayNameFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * @return the day in the form "December 06".
+     */
+    public String getFormattedMonthDay(long dateInMillis) {
+        synchronized (this) {
+            return mMonthDayFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * @return the description of the weather condition, or the unknown description with the id
+     * if there's no description for it.
+     */
+    public String getConditionDescription(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return mStormCondition;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return mDrizzleCondition;
+        }
+        int index = Arrays.binarySearch(CONDITION_IDS, weatherId);
+        if (index < 0) {
+            return String.format(mLocale, mUnknownConditionFormat, weatherId);
+        }
+        return mConditionNames[index];
+    }
+
+    private static long getGmtOffsetSeconds(long now) {
+        return TimeZone.getDefault().getOffset(now) / 1000;
+    }
+
+    /**
+     * Same as {@code android.text.format.Time.getJulianDay}.
+     *
+     * @param gmtoff the offset from UTC of the local time zone, in seconds
+     */
+    static int getJulianDay(long millis, long gmtoff) {
+        long offsetMillis = gmtoff * 1000;
+        long julianDay = (millis + offsetMillis) / DAY_IN_MILLIS;
+        return (int) julianDay + EPOCH_JULIAN_DAY;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+
+import java.util.Arrays;
+
+/**
+ * One location's daily forecast, as parsed from a forecast source.  Each day is a row across
+ * parallel primitive arrays, so parsing a forecast doesn't box anything, and
+ * {@link WeatherProvider#bulkInsert(long, ForecastBatch)} binds the columns straight into SQLite
+ * without building a ContentValues map per day.
+ *
+ * A forecast only uses a handful of distinct descriptions ("Clear", "Rain", ...), so each day
+ * stores an index into a small table of them instead of its own string.
+ */
+public class ForecastBatch {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int DEFAULT_DESCRIPTION_CAPACITY = 4;
+
+    private final String mCityName;
+    private final double mCityLatitude;
+    private final double mCityLongitude;
+
+    private int mSize;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private int[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+    private byte[] mDescriptionIds;
+
+    private int mDescriptionCount;
+    private String[] mDescriptionTable;
+
+    public ForecastBatch(String cityName, double cityLatitude, double cityLongitude,
+                         int capacity) {
+        mCityName = cityName;
+        mCityLatitude = cityLatitude;
+        mCityLongitude = cityLongitude;
+        if (capacity <= 0) {
+            capacity = DEFAULT_CAPACITY;
+        }
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new int[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+        mDescriptionIds = new byte[capacity];
+        mDescriptionTable = new String[DEFAULT_DESCRIPTION_CAPACITY];
+    }
+
+    /**
+     * Appends one day.
+     *
+     * @param date the normalized UTC start of the day, see {@link WeatherContract#normalizeDate}
+     */
+    public void add(long date, int weatherId, String description, double minTemp,
+                    double maxTemp, int humidity, double pressure, double windSpeed,
+                    double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mDescriptionIds[mSize] = internDescription(description);
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = mDates.length * 2;
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+        mDescriptionIds = Arrays.copyOf(mDescriptionIds, capacity);
+    }
+
+    private byte internDescription(String description) {
+        for (int i = 0; i < mDescriptionCount; i++) {
+            if (mDescriptionTable[i].equals(description)) {
+                return (byte) i;
+            }
+        }
+        if (mDescriptionCount == Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct descriptions");
+        }
+        if (mDescriptionCount == mDescriptionTable.length) {
+            mDescriptionTable = Arrays.copyOf(mDescriptionTable, mDescriptionCount * 2);
+        }
+        mDescriptionTable[mDescriptionCount] = description;
+        return (byte) mDescriptionCount++;
+    }
+
+    public String getCityName() {
+        return mCityName;
+    }
+
+    public double getCityLatitude() {
+        return mCityLatitude;
+    }
+
+    public double getCityLongitude() {
+        return mCityLongitude;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getDate(int day) {
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public String getDescription(int day) {
+        return mDescriptionTable[mDescriptionIds[day]];
+    }
+
+    /**
+     * @return how many distinct descriptions this forecast uses.
+     */
+    public int getDescriptionCount() {
+        return mDescriptionCount;
+    }
+
+    public double getMinTemp(int day) {
+        return mMinTemps[day];
+    }
+
+    public double getMaxTemp(int day) {
+        return mMaxTemps[day];
+    }
+
+    public int getHumidity(int day) {
+        return mHumidities[day];
+    }
+
+    public double getPressure(int day) {
+        return mPressures[day];
+    }
+
+    public double getWindSpeed(int day) {
+        return mWindSpeeds[day];
+    }
+
+    public double getDegrees(int day) {
+        return mDegrees[day];
+    }
+
+    /**
+     * @return the day with the given date, or -1 if the forecast doesn't cover it.
+     */
+    public int indexOfDate(long date) {
+        for (int i = 0; i < mSize; i++) {
+            if (mDates[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return one row of weather table values per day, for the given location row.  Only for
+     * writing through a ContentResolver; the in-process write path doesn't need it.
+     */
+    public ContentValues[] toContentValues(long locationId) {
+        ContentValues[] rows = new ContentValues[mSize];
+        for (int i = 0; i < mSize; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDates[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, mHumidities[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, mPressures[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, mDegrees[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, getDescription(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+            rows[i] = weatherValues;
+        }
+        return rows;
+    }
+}
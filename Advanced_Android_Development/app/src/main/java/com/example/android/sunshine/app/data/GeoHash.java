@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohashes for the location table.  A geohash interleaves the bits of the latitude and
+ * longitude into a base 32 string, so places that share a prefix share a grid cell, and a cell
+ * and its neighbours can be found with a few range scans over an ordinary index.
+ */
+class GeoHash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    // About 5m x 5m, more than enough to tell two saved places apart
+    static final int STORED_PRECISION = 9;
+
+    static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * @return the height of a cell of the given precision, in degrees of latitude.
+     */
+    static double getCellLatitudeDegrees(int precision) {
+        return 180 / Math.pow(2, precision * 5 / 2);
+    }
+
+    /**
+     * @return the width of a cell of the given precision, in degrees of longitude.
+     */
+    static double getCellLongitudeDegrees(int precision) {
+        return 360 / Math.pow(2, (precision * 5 + 1) / 2);
+    }
+
+    /**
+     * @return the longest prefix whose cells are at least the radius across in both directions
+     * at the given latitude, so that a cell and its eight neighbours cover the whole circle; or 0
+     * if the radius is too big for any prefix to help.
+     */
+    static int getSearchPrecision(double latitude, double radiusKm) {
+        double radiusLat = radiusKm / KM_PER_DEGREE;
+        // Degrees of longitude get shorter towards the poles
+        double cosLat = Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+        double radiusLon = radiusLat / cosLat;
+        for (int precision = STORED_PRECISION; precision > 0; precision--) {
+            if (getCellLatitudeDegrees(precision) >= radiusLat
+                    && getCellLongitudeDegrees(precision) >= radiusLon) {
+                return precision;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the cell containing the point and the cells around it, at the given precision.
+     * Cells past the poles are left out; cells past the date line wrap around.
+     */
+    static Set<String> getSearchCells(double latitude, double longitude, int precision) {
+        double cellLat = getCellLatitudeDegrees(precision);
+        double cellLon = getCellLongitudeDegrees(precision);
+        Set<String> cells = new LinkedHashSet<>();
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            double lat = latitude + dLat * cellLat;
+            if (lat < -90 || lat > 90) {
+                continue;
+            }
+            for (int dLon = -1; dLon <= 1; dLon++) {
+                double lon = longitude + dLon * cellLon;
+                if (lon < -180) {
+                    lon += 360;
+                } else if (lon >= 180) {
+                    lon -= 360;
+                }
+                cells.add(encode(lat, lon, precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return the first string after every geohash starting with the given prefix, for range
+     * scans.
+     */
+    static String getPrefixEnd(String prefix) {
+        // '~' sorts after every geohash character
+        return prefix + "~";
+    }
+
+    /**
+     * @return the great-circle distance between two points, in kilometers.
+     */
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Moves expired days out of the weather table into the history table, and keeps the history
+ * small: days older than {@link #DAILY_RETENTION_MILLIS} are folded into one row per week, and
+ * the oldest rows are dropped once the table goes over its row budget.
+ *
+ * Everything runs on the caller's database inside a single transaction.
+ */
+class HistoryCompactor {
+    private static final String LOG_TAG = HistoryCompactor.class.getSimpleName();
+
+    static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    static final long WEEK_IN_MILLIS = HistoryEntry.PERIOD_WEEK * DAY_IN_MILLIS;
+    // Keep four weeks of daily history before compacting it into weeks
+    static final long DAILY_RETENTION_MILLIS = 4 * WEEK_IN_MILLIS;
+
+    private static final String HISTORY_COLUMNS = HistoryEntry.COLUMN_LOC_KEY + ", "
+            + HistoryEntry.COLUMN_PERIOD_START + ", "
+            + HistoryEntry.COLUMN_PERIOD_DAYS + ", "
+            + HistoryEntry.COLUMN_SAMPLE_COUNT + ", "
+            + HistoryEntry.COLUMN_MIN_TEMP + ", "
+            + HistoryEntry.COLUMN_MAX_TEMP + ", "
+            + HistoryEntry.COLUMN_MEAN_TEMP + ", "
+            + HistoryEntry.COLUMN_HUMIDITY + ", "
+            + HistoryEntry.COLUMN_PRESSURE + ", "
+            + HistoryEntry.COLUMN_WIND_SPEED + ", "
+            + HistoryEntry.COLUMN_WEATHER_ID;
+
+    private static final String SQL_ARCHIVE_DAYS = "INSERT INTO " + HistoryEntry.TABLE_NAME
+            + " (" + HISTORY_COLUMNS + ") SELECT "
+            + WeatherEntry.COLUMN_LOC_KEY + ", "
+            + WeatherEntry.COLUMN_DATE + ", "
+            + HistoryEntry.PERIOD_DAY + ", "
+            + "1, "
+            + WeatherEntry.COLUMN_MIN_TEMP + ", "
+            + WeatherEntry.COLUMN_MAX_TEMP + ", "
+            + "(" + WeatherEntry.COLUMN_MIN_TEMP + " + " + WeatherEntry.COLUMN_MAX_TEMP + ") / 2, "
+            + WeatherEntry.COLUMN_HUMIDITY + ", "
+            + WeatherEntry.COLUMN_PRESSURE + ", "
+            + WeatherEntry.COLUMN_WIND_SPEED + ", "
+            + WeatherEntry.COLUMN_WEATHER_ID
+            + " FROM " + WeatherEntry.TABLE_NAME + " WHERE ";
+
+    // Weeks are counted from the epoch, so every location buckets days the same way
+    private static final String WEEK_START = "(" + HistoryEntry.COLUMN_PERIOD_START + " / "
+            + WEEK_IN_MILLIS + ") * " + WEEK_IN_MILLIS;
+
+    // Each week's rows, daily ones and any weekly row already there, are merged into a single
+    // weekly row, averaging by how many days each row holds.  The merged row replaces the
+    // weekly one through the table's UNIQUE ... ON CONFLICT REPLACE, so days that arrive after
+    // their week was compacted are added to it rather than overwriting it.  Weeks without new
+    // daily rows are left alone.
+    private static final String SQL_COMPACT_WEEKS = "INSERT INTO " + HistoryEntry.TABLE_NAME
+            + " (" + HISTORY_COLUMNS + ") SELECT "
+            + HistoryEntry.COLUMN_LOC_KEY + ", "
+            + WEEK_START + " AS week, "
+            + HistoryEntry.PERIOD_WEEK + ", "
+            + "SUM(" + HistoryEntry.COLUMN_SAMPLE_COUNT + "), "
+            + "MIN(" + HistoryEntry.COLUMN_MIN_TEMP + "), "
+            + "MAX(" + HistoryEntry.COLUMN_MAX_TEMP + "), "
+            + weightedMean(HistoryEntry.COLUMN_MEAN_TEMP) + ", "
+            + weightedMean(HistoryEntry.COLUMN_HUMIDITY) + ", "
+            + weightedMean(HistoryEntry.COLUMN_PRESSURE) + ", "
+            + weightedMean(HistoryEntry.COLUMN_WIND_SPEED) + ", "
+            + "NULL"
+            + " FROM " + HistoryEntry.TABLE_NAME
+            + " WHERE " + HistoryEntry.COLUMN_PERIOD_START + " < ?"
+            + " GROUP BY " + HistoryEntry.COLUMN_LOC_KEY + ", week"
+            + " HAVING SUM(" + HistoryEntry.COLUMN_PERIOD_DAYS + " = "
+            + HistoryEntry.PERIOD_DAY + ") > 0";
+
+    private static String weightedMean(String column) {
+        return "SUM(" + column + " * " + HistoryEntry.COLUMN_SAMPLE_COUNT + ") / SUM("
+                + HistoryEntry.COLUMN_SAMPLE_COUNT + ")";
+    }
+
+    private static final String SQL_DROP_OLDEST = "DELETE FROM " + HistoryEntry.TABLE_NAME
+            + " WHERE " + HistoryEntry._ID + " IN (SELECT " + HistoryEntry._ID
+            + " FROM " + HistoryEntry.TABLE_NAME
+            + " ORDER BY " + HistoryEntry.COLUMN_PERIOD_START + " ASC LIMIT ?)";
+
+    /**
+     * Moves the weather rows matching the selection into the history, then compacts it.
+     *
+     * @param rowBudget the most rows the history table may hold afterwards
+     * @param now the current time, which decides which days are old enough to compact
+     * @return the number of weather rows moved
+     */
+    static int archive(SQLiteDatabase db, String selection, String[] selectionArgs,
+                       int rowBudget, long now) {
+        Object[] bindArgs = selectionArgs != null ? selectionArgs : new Object[0];
+        int moved;
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_ARCHIVE_DAYS + selection, bindArgs);
+            moved = db.delete(WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            compact(db, now);
+            enforceBudget(db, rowBudget);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return moved;
+    }
+
+    /**
+     * Folds daily rows from before the start of the week {@link #DAILY_RETENTION_MILLIS} ago
+     * into weekly rows.  Only whole weeks are compacted, so a week never ends up split between
+     * a weekly row and daily ones.
+     */
+    static void compact(SQLiteDatabase db, long now) {
+        long cutoff = (now - DAILY_RETENTION_MILLIS) / WEEK_IN_MILLIS * WEEK_IN_MILLIS;
+        String[] args = new String[] {Long.toString(cutoff)};
+        db.execSQL(SQL_COMPACT_WEEKS, args);
+        int compacted = db.delete(HistoryEntry.TABLE_NAME,
+                HistoryEntry.COLUMN_PERIOD_DAYS + " = " + HistoryEntry.PERIOD_DAY + " AND "
+                        + HistoryEntry.COLUMN_PERIOD_START + " < ?",
+                args);
+        if (compacted > 0) {
+            Log.d(LOG_TAG, "Compacted " + compacted + " days of history into weeks");
+        }
+    }
+
+    static void enforceBudget(SQLiteDatabase db, int rowBudget) {
+        long rows = DatabaseUtils.queryNumEntries(db, HistoryEntry.TABLE_NAME);
+        if (rows > rowBudget) {
+            db.execSQL(SQL_DROP_OLDEST, new Object[] {rows - rowBudget});
+            Log.d(LOG_TAG, "Dropped " + (rows - rowBudget) + " history rows over the budget of "
+                    + rowBudget);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers which location row each location setting maps to, so a sync doesn't have to query
+ * the location table before every forecast it writes.
+ *
+ * Settings are looked up lazily and remembered once found.  Any write to the location table
+ * clears everything remembered, since a deleted or replaced row would leave a stale id behind.
+ */
+public class LocationRegistry {
+    private static final String LOG_TAG = LocationRegistry.class.getSimpleName();
+
+    // Stay well under SQLite's limit of 999 arguments per statement
+    private static final int MAX_SETTINGS_PER_QUERY = 500;
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING
+    };
+    // these indices must match the projection
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+
+    private static LocationRegistry sInstance;
+
+    private final ContentResolver mResolver;
+    private final Map<String, Long> mIds = new HashMap<>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mQueryCount;
+    private int mInvalidationCount;
+
+    public static synchronized LocationRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LocationRegistry(context.getApplicationContext().getContentResolver());
+            sInstance.observe();
+        }
+        return sInstance;
+    }
+
+    LocationRegistry(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    private void observe() {
+        // With no handler, changes are delivered on a binder thread
+        mResolver.registerContentObserver(LocationEntry.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * @return the id of the location row for the given setting, or -1 if there isn't one.
+     */
+    public long getLocationId(String locationSetting) {
+        Long locationId = resolve(Collections.singletonList(locationSetting)).get(locationSetting);
+        return locationId != null ? locationId : -1;
+    }
+
+    /**
+     * Looks up many settings at once, for syncs covering several locations.  Settings that
+     * aren't remembered yet are looked up together, in a single query per
+     * {@link #MAX_SETTINGS_PER_QUERY} of them.
+     *
+     * @return the id of the location row for each setting that has one.
+     */
+    public synchronized Map<String, Long> resolve(Collection<String> locationSettings) {
+        Map<String, Long> ids = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String locationSetting : locationSettings) {
+            Long locationId = mIds.get(locationSetting);
+            if (locationId != null) {
+                mHitCount++;
+                ids.put(locationSetting, locationId);
+            } else if (!missing.contains(locationSetting)) {
+                mMissCount++;
+                missing.add(locationSetting);
+            }
+        }
+
+        for (int start = 0; start < missing.size(); start += MAX_SETTINGS_PER_QUERY) {
+            List<String> chunk =
+                    missing.subList(start, Math.min(missing.size(), start + MAX_SETTINGS_PER_QUERY));
+            StringBuilder selection = new StringBuilder(LocationEntry.COLUMN_LOCATION_SETTING)
+                    .append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+            }
+            selection.append(")");
+
+            mQueryCount++;
+            Cursor cursor = mResolver.query(LocationEntry.CONTENT_URI, LOCATION_COLUMNS,
+                    selection.toString(), chunk.toArray(new String[chunk.size()]), null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    String locationSetting = cursor.getString(INDEX_LOCATION_SETTING);
+                    long locationId = cursor.getLong(INDEX_LOCATION_ID);
+                    mIds.put(locationSetting, locationId);
+                    ids.put(locationSetting, locationId);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Helper method to handle insertion of a new location in the weather database.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @param cityName A human-readable city name, e.g "Mountain View"
+     * @param lat the latitude of the city
+     * @param lon the longitude of the city
+     * @return the row ID of the added location.
+     */
+    public long addLocation(String locationSetting, String cityName, double lat, double lon) {
+        long locationId = getLocationId(locationSetting);
+        if (locationId != -1) {
+            return locationId;
+        }
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        Uri insertedUri = mResolver.insert(LocationEntry.CONTENT_URI, locationValues);
+
+        // The resulting URI contains the ID for the row.
+        locationId = ContentUris.parseId(insertedUri);
+        synchronized (this) {
+            mIds.put(locationSetting, locationId);
+        }
+        return locationId;
+    }
+
+    /**
+     * Forgets every remembered id.  Called whenever the location table changes.
+     */
+    public synchronized void invalidate() {
+        if (!mIds.isEmpty()) {
+            mInvalidationCount++;
+            mIds.clear();
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getQueryCount() {
+        return mQueryCount;
+    }
+
+    public synchronized int getInvalidationCount() {
+        return mInvalidationCount;
+    }
+
+    /**
+     * @return the share of lookups answered from memory, or 0 before the first lookup.
+     */
+    public synchronized float getHitRate() {
+        int lookups = mHitCount + mMissCount;
+        return lookups == 0 ? 0f : (float) mHitCount / lookups;
+    }
+
+    /**
+     * Logs the counters, for checking how well the registry is doing.
+     */
+    public synchronized void logStats() {
+        Log.d(LOG_TAG, "Location lookups: " + mHitCount + " hits, " + mMissCount + " misses ("
+                + Math.round(getHitRate() * 100) + "% hit rate), " + mQueryCount + " queries, "
+                + mInvalidationCount + " invalidations");
+    }
+}
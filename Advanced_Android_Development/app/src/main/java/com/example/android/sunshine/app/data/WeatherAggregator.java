@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Keeps the aggregate table's weekly and monthly statistics up to date.
+ *
+ * A day's forecast keeps changing until the day is over, and a running min or max can't take
+ * back a value that has been replaced.  So each day is folded in exactly once, when a new
+ * forecast starting after it arrives; until then it only lives in the weather table.  A
+ * per-location watermark (the latest day folded) keeps days from being counted twice.
+ *
+ * Must be called inside the transaction that writes the new forecast.
+ */
+class WeatherAggregator {
+
+    private static final long WEEK_IN_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String[] DAY_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_HUMIDITY = 3;
+    private static final int INDEX_PRESSURE = 4;
+    private static final int INDEX_WIND_SPEED = 5;
+
+    private static final String SQL_WATERMARK = "SELECT MAX(" + AggregateEntry.COLUMN_LAST_DATE
+            + ") FROM " + AggregateEntry.TABLE_NAME
+            + " WHERE " + AggregateEntry.COLUMN_LOC_KEY + " = ?";
+
+    // Bind order for both statements below: date, then sum/min/max for each value
+    private static final String SQL_UPDATE = "UPDATE " + AggregateEntry.TABLE_NAME + " SET "
+            + AggregateEntry.COLUMN_COUNT + " = " + AggregateEntry.COLUMN_COUNT + " + 1, "
+            + AggregateEntry.COLUMN_LAST_DATE + " = MAX(" + AggregateEntry.COLUMN_LAST_DATE + ", ?), "
+            + foldColumns(AggregateEntry.COLUMN_MAX_TEMP_SUM, AggregateEntry.COLUMN_MAX_TEMP_MIN,
+                    AggregateEntry.COLUMN_MAX_TEMP_MAX) + ", "
+            + foldColumns(AggregateEntry.COLUMN_MIN_TEMP_SUM, AggregateEntry.COLUMN_MIN_TEMP_MIN,
+                    AggregateEntry.COLUMN_MIN_TEMP_MAX) + ", "
+            + foldColumns(AggregateEntry.COLUMN_HUMIDITY_SUM, AggregateEntry.COLUMN_HUMIDITY_MIN,
+                    AggregateEntry.COLUMN_HUMIDITY_MAX) + ", "
+            + foldColumns(AggregateEntry.COLUMN_PRESSURE_SUM, AggregateEntry.COLUMN_PRESSURE_MIN,
+                    AggregateEntry.COLUMN_PRESSURE_MAX) + ", "
+            + foldColumns(AggregateEntry.COLUMN_WIND_SPEED_SUM, AggregateEntry.COLUMN_WIND_SPEED_MIN,
+                    AggregateEntry.COLUMN_WIND_SPEED_MAX)
+            + " WHERE " + AggregateEntry.COLUMN_LOC_KEY + " = ? AND "
+            + AggregateEntry.COLUMN_PERIOD + " = ? AND "
+            + AggregateEntry.COLUMN_PERIOD_START + " = ?";
+
+    private static final String SQL_INSERT = "INSERT INTO " + AggregateEntry.TABLE_NAME + " ("
+            + AggregateEntry.COLUMN_LAST_DATE + ", "
+            + AggregateEntry.COLUMN_MAX_TEMP_SUM + ", "
+            + AggregateEntry.COLUMN_MAX_TEMP_MIN + ", "
+            + AggregateEntry.COLUMN_MAX_TEMP_MAX + ", "
+            + AggregateEntry.COLUMN_MIN_TEMP_SUM + ", "
+            + AggregateEntry.COLUMN_MIN_TEMP_MIN + ", "
+            + AggregateEntry.COLUMN_MIN_TEMP_MAX + ", "
+            + AggregateEntry.COLUMN_HUMIDITY_SUM + ", "
+            + AggregateEntry.COLUMN_HUMIDITY_MIN + ", "
+            + AggregateEntry.COLUMN_HUMIDITY_MAX + ", "
+            + AggregateEntry.COLUMN_PRESSURE_SUM + ", "
+            + AggregateEntry.COLUMN_PRESSURE_MIN + ", "
+            + AggregateEntry.COLUMN_PRESSURE_MAX + ", "
+            + AggregateEntry.COLUMN_WIND_SPEED_SUM + ", "
+            + AggregateEntry.COLUMN_WIND_SPEED_MIN + ", "
+            + AggregateEntry.COLUMN_WIND_SPEED_MAX + ", "
+            + AggregateEntry.COLUMN_LOC_KEY + ", "
+            + AggregateEntry.COLUMN_PERIOD + ", "
+            + AggregateEntry.COLUMN_PERIOD_START + ", "
+            + AggregateEntry.COLUMN_COUNT
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1)";
+
+    private static String foldColumns(String sum, String min, String max) {
+        return sum + " = " + sum + " + ?, "
+                + min + " = MIN(" + min + ", ?), "
+                + max + " = MAX(" + max + ", ?)";
+    }
+
+    /**
+     * Folds the location's days before the given date that haven't been folded yet.
+     *
+     * @return the number of days folded
+     */
+    static int foldSettledDays(SQLiteDatabase db, long locationId, long beforeDate) {
+        String location = Long.toString(locationId);
+        long watermark = DatabaseUtils.longForQuery(db, SQL_WATERMARK, new String[] {location});
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, DAY_COLUMNS,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " > ? AND "
+                        + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[] {location, Long.toString(watermark), Long.toString(beforeDate)},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        if (!cursor.moveToFirst()) {
+            cursor.close();
+            return 0;
+        }
+
+        SQLiteStatement update = db.compileStatement(SQL_UPDATE);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+        Time time = new Time();
+        int folded = 0;
+        try {
+            do {
+                long date = cursor.getLong(INDEX_DATE);
+                fold(update, insert, cursor, locationId, AggregateEntry.PERIOD_WEEK,
+                        date / WEEK_IN_MILLIS * WEEK_IN_MILLIS);
+                fold(update, insert, cursor, locationId, AggregateEntry.PERIOD_MONTH,
+                        getMonthStart(time, date));
+                folded++;
+            } while (cursor.moveToNext());
+        } finally {
+            cursor.close();
+            update.close();
+            insert.close();
+        }
+        return folded;
+    }
+
+    private static void fold(SQLiteStatement update, SQLiteStatement insert, Cursor day,
+                             long locationId, String period, long periodStart) {
+        // Values are bound at the same positions in both statements
+        update.clearBindings();
+        bindDay(update, day);
+        update.bindLong(17, locationId);
+        update.bindString(18, period);
+        update.bindLong(19, periodStart);
+        if (update.executeUpdateDelete() > 0) {
+            return;
+        }
+        insert.clearBindings();
+        bindDay(insert, day);
+        insert.bindLong(17, locationId);
+        insert.bindString(18, period);
+        insert.bindLong(19, periodStart);
+        insert.executeInsert();
+    }
+
+    private static void bindDay(SQLiteStatement statement, Cursor day) {
+        statement.bindLong(1, day.getLong(INDEX_DATE));
+        int index = 2;
+        for (int column = INDEX_MAX_TEMP; column <= INDEX_WIND_SPEED; column++) {
+            double value = day.getDouble(column);
+            // sum, min and max all start from the same value
+            statement.bindDouble(index++, value);
+            statement.bindDouble(index++, value);
+            statement.bindDouble(index++, value);
+        }
+    }
+
+    /**
+     * @return the normalized first day of the month the given day falls in.
+     */
+    static long getMonthStart(Time time, long date) {
+        time.set(date);
+        time.set(1, time.month, time.year);
+        return WeatherContract.normalizeDate(time.toMillis(true));
+    }
+}
@@ -43,6 +43,10 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_NEAREST = "nearest";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_AGGREGATE = "aggregate";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -68,6 +72,10 @@ public class WeatherContract {
         // Table name
         public static final String TABLE_NAME = "location";
 
+        // Full-text index over the city names and location settings, kept in step with the
+        // location table by triggers
+        public static final String SEARCH_TABLE_NAME = "location_search";
+
         // The location setting string is what will be sent to openweathermap
         // as the location query.
         public static final String COLUMN_LOCATION_SETTING = "location_setting";
@@ -81,9 +89,53 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Geohash of the coordinates, indexed so we can find saved locations near a point
+        public static final String COLUMN_GEOHASH = "geohash";
+
+        // Query parameters of the nearest location uri
+        public static final String PARAM_LATITUDE = "lat";
+        public static final String PARAM_LONGITUDE = "lon";
+        public static final String PARAM_RADIUS_KM = "radius_km";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /*
+            The saved location closest to the given point, if there is one within the radius.
+         */
+        public static Uri buildNearestLocationUri(double latitude, double longitude,
+                                                  double radiusKm) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAREST)
+                    .appendQueryParameter(PARAM_LATITUDE, Double.toString(latitude))
+                    .appendQueryParameter(PARAM_LONGITUDE, Double.toString(longitude))
+                    .appendQueryParameter(PARAM_RADIUS_KM, Double.toString(radiusKm))
+                    .build();
+        }
+
+        /*
+            Saved locations whose city name or location setting has words starting with the
+            words typed so far, e.g. "mou vi" finds "Mountain View".
+         */
+        public static Uri buildLocationSearchUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
+        }
+
+        public static String getSearchQueryFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        public static double getLatitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LATITUDE));
+        }
+
+        public static double getLongitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LONGITUDE));
+        }
+
+        public static double getRadiusKmFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_RADIUS_KM));
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -126,10 +178,31 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Deleting through a URI with this parameter moves the rows into the history table
+        // instead of dropping them.  Its value is the history table's row budget.
+        public static final String PARAM_ARCHIVE_BUDGET = "archive_budget";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        public static Uri buildWeatherArchiveUri(int historyRowBudget) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_ARCHIVE_BUDGET, Integer.toString(historyRowBudget))
+                    .build();
+        }
+
+        /**
+         * @return the history row budget of an archive URI, or -1 if the URI doesn't archive.
+         */
+        public static int getArchiveBudgetFromUri(Uri uri) {
+            String budgetString = uri.getQueryParameter(PARAM_ARCHIVE_BUDGET);
+            if (null != budgetString && budgetString.length() > 0)
+                return Integer.parseInt(budgetString);
+            else
+                return -1;
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
@@ -165,4 +238,124 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the history table */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        public static final String TABLE_NAME = "history";
+
+        // Period lengths, in days.  Days that expire from the weather table are archived as
+        // daily rows, which are later compacted into weekly ones.
+        public static final int PERIOD_DAY = 1;
+        public static final int PERIOD_WEEK = 7;
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Start of the period, stored as long in milliseconds since the epoch
+        public static final String COLUMN_PERIOD_START = "period_start";
+        // Length of the period in days, PERIOD_DAY or PERIOD_WEEK
+        public static final String COLUMN_PERIOD_DAYS = "period_days";
+        // How many days of forecast this row summarizes
+        public static final String COLUMN_SAMPLE_COUNT = "samples";
+
+        // Lowest low and highest high over the period
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Mean of the daily midpoints over the period
+        public static final String COLUMN_MEAN_TEMP = "mean";
+
+        // Means over the period
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+
+        // Weather id of the day, only set for daily rows
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+    }
+
+    /*
+        Inner class that defines the table contents of the aggregate table, which keeps running
+        statistics of past days per location, by week and by month.
+     */
+    public static final class AggregateEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_AGGREGATE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATE;
+
+        public static final String TABLE_NAME = "aggregate";
+
+        // Values of COLUMN_PERIOD
+        public static final String PERIOD_WEEK = "week";
+        public static final String PERIOD_MONTH = "month";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // PERIOD_WEEK or PERIOD_MONTH
+        public static final String COLUMN_PERIOD = "period";
+        // Start of the period, stored as long in milliseconds since the epoch
+        public static final String COLUMN_PERIOD_START = "period_start";
+        // The latest day folded into this row
+        public static final String COLUMN_LAST_DATE = "last_date";
+        // Number of days folded into this row
+        public static final String COLUMN_COUNT = "count";
+
+        // Sum, lowest and highest of the days' high temperatures
+        public static final String COLUMN_MAX_TEMP_SUM = "max_sum";
+        public static final String COLUMN_MAX_TEMP_MIN = "max_min";
+        public static final String COLUMN_MAX_TEMP_MAX = "max_max";
+
+        // Sum, lowest and highest of the days' low temperatures
+        public static final String COLUMN_MIN_TEMP_SUM = "min_sum";
+        public static final String COLUMN_MIN_TEMP_MIN = "min_min";
+        public static final String COLUMN_MIN_TEMP_MAX = "min_max";
+
+        public static final String COLUMN_HUMIDITY_SUM = "humidity_sum";
+        public static final String COLUMN_HUMIDITY_MIN = "humidity_min";
+        public static final String COLUMN_HUMIDITY_MAX = "humidity_max";
+
+        public static final String COLUMN_PRESSURE_SUM = "pressure_sum";
+        public static final String COLUMN_PRESSURE_MIN = "pressure_min";
+        public static final String COLUMN_PRESSURE_MAX = "pressure_max";
+
+        public static final String COLUMN_WIND_SPEED_SUM = "wind_sum";
+        public static final String COLUMN_WIND_SPEED_MIN = "wind_min";
+        public static final String COLUMN_WIND_SPEED_MAX = "wind_max";
+
+        public static Uri buildAggregateLocation(String period, String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(period).appendPath(locationSetting).build();
+        }
+
+        public static Uri buildAggregateLocationWithStartDate(
+                String period, String locationSetting, long startDate) {
+            return buildAggregateLocation(period, locationSetting).buildUpon()
+                    .appendQueryParameter(COLUMN_PERIOD_START,
+                            Long.toString(normalizeDate(startDate)))
+                    .build();
+        }
+
+        public static String getPeriodFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(COLUMN_PERIOD_START);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+    }
 }
@@ -15,10 +15,14 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -28,71 +32,207 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 6;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Create a table to hold locations.  A location consists of the string supplied in the
+    // location setting, the city name, and the latitude and longitude
+    private static final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry._ID + " INTEGER PRIMARY KEY," +
+            LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+            LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+            LocationEntry.COLUMN_GEOHASH + " TEXT " +
+            " );";
+
+    // Nearest location lookups are range scans over geohash prefixes
+    private static final String SQL_CREATE_LOCATION_GEOHASH_INDEX = "CREATE INDEX " +
+            LocationEntry.TABLE_NAME + "_" + LocationEntry.COLUMN_GEOHASH + " ON " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_GEOHASH + ");";
+
+    // Prefix search over location names.  The index reads its text from the location table
+    // instead of keeping a copy, and the triggers below keep it up to date.  The extra
+    // indexes on 2 and 3 letter prefixes keep the first few keystrokes fast.
+    private static final String SQL_CREATE_LOCATION_SEARCH_TABLE = "CREATE VIRTUAL TABLE " +
+            LocationEntry.SEARCH_TABLE_NAME + " USING fts4(content=\"" +
+            LocationEntry.TABLE_NAME + "\", prefix=\"2,3\", " +
+            LocationEntry.COLUMN_CITY_NAME + ", " +
+            LocationEntry.COLUMN_LOCATION_SETTING + ");";
+
+    private static final String SQL_INDEX_NEW_LOCATION = "INSERT INTO " + LocationEntry.SEARCH_TABLE_NAME +
+            " (docid, " + LocationEntry.COLUMN_CITY_NAME + ", " +
+            LocationEntry.COLUMN_LOCATION_SETTING + ") VALUES (new." + LocationEntry._ID +
+            ", new." + LocationEntry.COLUMN_CITY_NAME +
+            ", new." + LocationEntry.COLUMN_LOCATION_SETTING + "); ";
+    // Removing a row from the index needs its old text, so this has to run before the
+    // location row changes
+    private static final String SQL_UNINDEX_OLD_LOCATION = "DELETE FROM " + LocationEntry.SEARCH_TABLE_NAME +
+            " WHERE docid = old." + LocationEntry._ID + "; ";
+
+    private static final String[] SQL_CREATE_LOCATION_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER " + LocationEntry.TABLE_NAME + "_ai AFTER INSERT ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + SQL_INDEX_NEW_LOCATION + "END;",
+            "CREATE TRIGGER " + LocationEntry.TABLE_NAME + "_bu BEFORE UPDATE ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + SQL_UNINDEX_OLD_LOCATION + "END;",
+            "CREATE TRIGGER " + LocationEntry.TABLE_NAME + "_au AFTER UPDATE ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + SQL_INDEX_NEW_LOCATION + "END;",
+            "CREATE TRIGGER " + LocationEntry.TABLE_NAME + "_bd BEFORE DELETE ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + SQL_UNINDEX_OLD_LOCATION + "END;"
+    };
+
+    private static final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+            // Why AutoIncrement here, and not above?
+            // Unique keys will be auto-generated in either case.  But for weather
+            // forecasting, it's reasonable to assume the user will want information
+            // for a certain date and all dates *following*, so the forecast data
+            // should be sorted accordingly.
+            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+            // the ID of the location entry associated with this weather data
+            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+            WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+            // Set up the location column as a foreign key to location table.
+            " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // To assure the application have just one weather entry per day
+            // per location, it's created a UNIQUE constraint with REPLACE strategy
+            " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // Days that have dropped out of the weather table, compacted over time
+    private static final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+            HistoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+            HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_PERIOD_DAYS + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_SAMPLE_COUNT + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_MEAN_TEMP + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_WEATHER_ID + " INTEGER, " +
+
+            " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // One row per location and period
+            " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+            HistoryEntry.COLUMN_PERIOD_START + ", " +
+            HistoryEntry.COLUMN_PERIOD_DAYS + ") ON CONFLICT REPLACE);";
+
+    // Running statistics of past days, per location and week or month
+    private static final String SQL_CREATE_AGGREGATE_TABLE = "CREATE TABLE " + AggregateEntry.TABLE_NAME + " (" +
+            AggregateEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+            AggregateEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_PERIOD + " TEXT NOT NULL, " +
+            AggregateEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_LAST_DATE + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_COUNT + " INTEGER NOT NULL, " +
+            AggregateEntry.COLUMN_MAX_TEMP_SUM + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_MAX_TEMP_MIN + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_MAX_TEMP_MAX + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_MIN_TEMP_SUM + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_MIN_TEMP_MIN + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_MIN_TEMP_MAX + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_HUMIDITY_SUM + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_HUMIDITY_MIN + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_HUMIDITY_MAX + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_PRESSURE_SUM + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_PRESSURE_MIN + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_PRESSURE_MAX + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_WIND_SPEED_SUM + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_WIND_SPEED_MIN + " REAL NOT NULL, " +
+            AggregateEntry.COLUMN_WIND_SPEED_MAX + " REAL NOT NULL, " +
+
+            " FOREIGN KEY (" + AggregateEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // One row per location and period, which also indexes trend lookups
+            " UNIQUE (" + AggregateEntry.COLUMN_LOC_KEY + ", " +
+            AggregateEntry.COLUMN_PERIOD + ", " +
+            AggregateEntry.COLUMN_PERIOD_START + ") ON CONFLICT REPLACE);";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
-        // Create a table to hold locations.  A location consists of the string supplied in the
-        // location setting, the city name, and the latitude and longitude
-        final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
-                LocationEntry._ID + " INTEGER PRIMARY KEY," +
-                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
-                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
-                " );";
-
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-
-                // the ID of the location entry associated with this weather data
-                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
-
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
-
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
-
-                // Set up the location column as a foreign key to location table.
-                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
-                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
-
-                // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
-
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_GEOHASH_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_SEARCH_TABLE);
+        for (String trigger : SQL_CREATE_LOCATION_SEARCH_TRIGGERS) {
+            sqLiteDatabase.execSQL(trigger);
+        }
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_AGGREGATE_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < 3) {
+            // Before the history table this database was only a cache for online data, so
+            // discard it and start over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // Past days can't be fetched again, so from here on each version is migrated in place.
+        // The history and aggregate tables refer to location rows, so those are kept as well.
+        if (oldVersion < 4) {
+            sqLiteDatabase.execSQL(SQL_CREATE_AGGREGATE_TABLE);
+        }
+        if (oldVersion < 5) {
+            sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                    LocationEntry.COLUMN_GEOHASH + " TEXT");
+            addGeoHashes(sqLiteDatabase);
+            sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_GEOHASH_INDEX);
+        }
+        if (oldVersion < 6) {
+            sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_SEARCH_TABLE);
+            for (String trigger : SQL_CREATE_LOCATION_SEARCH_TRIGGERS) {
+                sqLiteDatabase.execSQL(trigger);
+            }
+            // Index the locations that are already there
+            sqLiteDatabase.execSQL("INSERT INTO " + LocationEntry.SEARCH_TABLE_NAME + "(" +
+                    LocationEntry.SEARCH_TABLE_NAME + ") VALUES ('rebuild');");
+        }
+    }
+
+    private static void addGeoHashes(SQLiteDatabase sqLiteDatabase) {
+        Cursor cursor = sqLiteDatabase.query(LocationEntry.TABLE_NAME, new String[] {
+                LocationEntry._ID, LocationEntry.COLUMN_COORD_LAT, LocationEntry.COLUMN_COORD_LONG
+        }, null, null, null, null, null);
+        try {
+            ContentValues values = new ContentValues();
+            while (cursor.moveToNext()) {
+                values.put(LocationEntry.COLUMN_GEOHASH, GeoHash.encode(cursor.getDouble(1),
+                        cursor.getDouble(2), GeoHash.STORED_PRECISION));
+                sqLiteDatabase.update(LocationEntry.TABLE_NAME, values,
+                        LocationEntry._ID + " = ?", new String[] {Long.toString(cursor.getLong(0))});
+            }
+        } finally {
+            cursor.close();
+        }
     }
 }
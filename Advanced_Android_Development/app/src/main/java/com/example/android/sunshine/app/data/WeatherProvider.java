@@ -22,8 +22,13 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
@@ -34,6 +39,11 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAREST = 301;
+    static final int LOCATION_SEARCH = 302;
+    static final int HISTORY = 400;
+    static final int AGGREGATE = 500;
+    static final int AGGREGATE_WITH_PERIOD_AND_LOCATION = 501;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -51,6 +61,21 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    private static final SQLiteQueryBuilder sAggregateByLocationSettingQueryBuilder;
+
+    static{
+        sAggregateByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //aggregate INNER JOIN location ON aggregate.location_id = location._id
+        sAggregateByLocationSettingQueryBuilder.setTables(
+                WeatherContract.AggregateEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.AggregateEntry.TABLE_NAME +
+                        "." + WeatherContract.AggregateEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+    }
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -68,6 +93,17 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location.location_setting = ? AND period = ?
+    private static final String sLocationSettingAndPeriodSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.AggregateEntry.COLUMN_PERIOD + " = ? ";
+
+    //location.location_setting = ? AND period = ? AND period_start >= ?
+    private static final String sLocationSettingAndPeriodWithStartDateSelection =
+            sLocationSettingAndPeriodSelection + "AND " +
+                    WeatherContract.AggregateEntry.COLUMN_PERIOD_START + " >= ? ";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -108,6 +144,163 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor getAggregateByLocationSettingAndPeriod(
+            Uri uri, String[] projection, String sortOrder) {
+        String period = WeatherContract.AggregateEntry.getPeriodFromUri(uri);
+        String locationSetting = WeatherContract.AggregateEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.AggregateEntry.getStartDateFromUri(uri);
+
+        String[] selectionArgs;
+        String selection;
+
+        if (startDate == 0) {
+            selection = sLocationSettingAndPeriodSelection;
+            selectionArgs = new String[]{locationSetting, period};
+        } else {
+            selection = sLocationSettingAndPeriodWithStartDateSelection;
+            selectionArgs = new String[]{locationSetting, period, Long.toString(startDate)};
+        }
+
+        return sAggregateByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    private Cursor getNearestLocation(Uri uri, String[] projection) {
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = findNearestLocation(db,
+                WeatherContract.LocationEntry.getLatitudeFromUri(uri),
+                WeatherContract.LocationEntry.getLongitudeFromUri(uri),
+                WeatherContract.LocationEntry.getRadiusKmFromUri(uri));
+
+        // An empty cursor if nothing is close enough
+        return db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                projection,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null
+        );
+    }
+
+    // Suggestions past the first few aren't worth showing while the user types
+    private static final int MAX_SEARCH_RESULTS = 20;
+
+    //location._id IN (SELECT docid FROM location_search WHERE location_search MATCH ? LIMIT 20)
+    // The limit goes in the subquery so a short prefix doesn't collect every matching row first
+    private static final String sLocationSearchSelection =
+            WeatherContract.LocationEntry._ID + " IN (SELECT docid FROM " +
+                    WeatherContract.LocationEntry.SEARCH_TABLE_NAME + " WHERE " +
+                    WeatherContract.LocationEntry.SEARCH_TABLE_NAME + " MATCH ? LIMIT " +
+                    MAX_SEARCH_RESULTS + ")";
+
+    private Cursor searchLocations(Uri uri, String[] projection, String sortOrder) {
+        String match = buildPrefixMatch(WeatherContract.LocationEntry.getSearchQueryFromUri(uri));
+        String selection = sLocationSearchSelection;
+        String[] selectionArgs = new String[]{match};
+        if (match == null) {
+            // Nothing searchable was typed, so nothing matches
+            selection = "0";
+            selectionArgs = null;
+        }
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    /**
+     * Turns what the user typed into a full-text query where every word is a prefix, e.g.
+     * {@code mou vi} becomes {@code "mou*" "vi*"}, which matches "Mountain View".  Only letters
+     * and digits are kept, so nothing the user types can be taken as an FTS operator.
+     *
+     * @return the query, or null if there are no words in the text.
+     */
+    static String buildPrefixMatch(String text) {
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() == 0) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(word).append("*\"");
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    private static final String[] NEAREST_LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    // these indices must match the projection
+    private static final int INDEX_NEAREST_LOCATION_ID = 0;
+    private static final int INDEX_NEAREST_LOCATION_LAT = 1;
+    private static final int INDEX_NEAREST_LOCATION_LONG = 2;
+
+    /**
+     * Finds the saved location closest to a point.  Only the rows in the geohash cells around
+     * the point are read, one index range scan per cell, and the exact distances are worked out
+     * for those.
+     *
+     * @return the id of the closest location within the radius, or -1 if there is none.
+     */
+    static long findNearestLocation(SQLiteDatabase db, double latitude, double longitude,
+                                    double radiusKm) {
+        String selection = null;
+        String[] selectionArgs = null;
+        int precision = GeoHash.getSearchPrecision(latitude, radiusKm);
+        if (precision > 0) {
+            Set<String> cells = GeoHash.getSearchCells(latitude, longitude, precision);
+            StringBuilder builder = new StringBuilder();
+            selectionArgs = new String[cells.size() * 2];
+            int i = 0;
+            for (String cell : cells) {
+                if (i > 0) {
+                    builder.append(" OR ");
+                }
+                builder.append("(").append(WeatherContract.LocationEntry.COLUMN_GEOHASH)
+                        .append(" >= ? AND ").append(WeatherContract.LocationEntry.COLUMN_GEOHASH)
+                        .append(" < ?)");
+                selectionArgs[i++] = cell;
+                selectionArgs[i++] = GeoHash.getPrefixEnd(cell);
+            }
+            selection = builder.toString();
+        }
+
+        long nearestId = -1;
+        double nearestDistance = radiusKm;
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                NEAREST_LOCATION_COLUMNS, selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                double distance = GeoHash.distanceKm(latitude, longitude,
+                        cursor.getDouble(INDEX_NEAREST_LOCATION_LAT),
+                        cursor.getDouble(INDEX_NEAREST_LOCATION_LONG));
+                if (distance <= nearestDistance) {
+                    nearestDistance = distance;
+                    nearestId = cursor.getLong(INDEX_NEAREST_LOCATION_ID);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return nearestId;
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +323,16 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" + WeatherContract.PATH_NEAREST,
+                LOCATION_NEAREST);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" + WeatherContract.PATH_SEARCH + "/*",
+                LOCATION_SEARCH);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
+
+        matcher.addURI(authority, WeatherContract.PATH_AGGREGATE, AGGREGATE);
+        matcher.addURI(authority, WeatherContract.PATH_AGGREGATE + "/*/*",
+                AGGREGATE_WITH_PERIOD_AND_LOCATION);
         return matcher;
     }
 
@@ -164,6 +367,15 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_NEAREST:
+                return WeatherContract.LocationEntry.CONTENT_ITEM_TYPE;
+            case LOCATION_SEARCH:
+                return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HISTORY:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case AGGREGATE:
+            case AGGREGATE_WITH_PERIOD_AND_LOCATION:
+                return WeatherContract.AggregateEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +425,47 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearest"
+            case LOCATION_NEAREST: {
+                retCursor = getNearestLocation(uri, projection);
+                break;
+            }
+            // "location/search/*"
+            case LOCATION_SEARCH: {
+                retCursor = searchLocations(uri, projection, sortOrder);
+                break;
+            }
+            // "history"
+            case HISTORY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "aggregate/*/*"
+            case AGGREGATE_WITH_PERIOD_AND_LOCATION: {
+                retCursor = getAggregateByLocationSettingAndPeriod(uri, projection, sortOrder);
+                break;
+            }
+            // "aggregate"
+            case AGGREGATE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.AggregateEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -241,6 +494,7 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
+                addGeoHash(values);
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
@@ -263,14 +517,32 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            case WEATHER: {
+                int historyBudget = WeatherContract.WeatherEntry.getArchiveBudgetFromUri(uri);
+                if (historyBudget >= 0) {
+                    // Keep the expired days as history instead of dropping them
+                    rowsDeleted = HistoryCompactor.archive(db, selection, selectionArgs,
+                            historyBudget, System.currentTimeMillis());
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.HistoryEntry.CONTENT_URI, null);
+                } else {
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                }
                 break;
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case HISTORY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HistoryEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case AGGREGATE:
+                rowsDeleted = db.delete(
+                        WeatherContract.AggregateEntry.TABLE_NAME, selection, selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -289,6 +561,17 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    private void addGeoHash(ContentValues values) {
+        // keep the geohash in step with the coordinates
+        if (values.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LAT)
+                && values.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LONG)) {
+            values.put(WeatherContract.LocationEntry.COLUMN_GEOHASH, GeoHash.encode(
+                    values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT),
+                    values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG),
+                    GeoHash.STORED_PRECISION));
+        }
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -303,6 +586,7 @@ public class WeatherProvider extends ContentProvider {
                         selectionArgs);
                 break;
             case LOCATION:
+                addGeoHash(values);
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
                 break;
@@ -323,9 +607,28 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                int folded = 0;
                 try {
+                    // Fold each location's days from before its new forecast into the aggregates
+                    Map<Long, Long> firstDates = new HashMap<>();
                     for (ContentValues value : values) {
                         normalizeDate(value);
+                        Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                        Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                        if (locationId == null || date == null) {
+                            continue;
+                        }
+                        Long firstDate = firstDates.get(locationId);
+                        if (firstDate == null || date < firstDate) {
+                            firstDates.put(locationId, date);
+                        }
+                    }
+                    for (Map.Entry<Long, Long> entry : firstDates.entrySet()) {
+                        folded += WeatherAggregator.foldSettledDays(
+                                db, entry.getKey(), entry.getValue());
+                    }
+
+                    for (ContentValues value : values) {
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             returnCount++;
@@ -336,12 +639,80 @@ public class WeatherProvider extends ContentProvider {
                     db.endTransaction();
                 }
                 getContext().getContentResolver().notifyChange(uri, null);
+                if (folded > 0) {
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.AggregateEntry.CONTENT_URI, null);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    private static final String SQL_INSERT_WEATHER = "INSERT INTO "
+            + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+            + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", "
+            + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+            + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+            + WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", "
+            + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+            + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+            + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+            + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+            + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+            + WeatherContract.WeatherEntry.COLUMN_DEGREES
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Writes a whole forecast for one location in a single transaction, binding each day's
+     * columns straight from the batch.  This skips the ContentValues round trip, so it is only
+     * available to callers in our own process, through
+     * {@link android.content.ContentProviderClient#getLocalContentProvider()}.
+     *
+     * Like {@link #bulkInsert(Uri, ContentValues[])}, days already stored for the location are
+     * replaced, and days before the forecast's first one are folded into the aggregates.  The
+     * batch's dates must already be normalized.
+     *
+     * @return the number of rows inserted
+     */
+    public int bulkInsert(long locationId, ForecastBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int returnCount = 0;
+        int folded = 0;
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            if (batch.size() > 0) {
+                folded = WeatherAggregator.foldSettledDays(db, locationId, batch.getDate(0));
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                insert.bindLong(1, locationId);
+                insert.bindLong(2, batch.getDate(i));
+                insert.bindLong(3, batch.getWeatherId(i));
+                insert.bindString(4, batch.getDescription(i));
+                insert.bindDouble(5, batch.getMinTemp(i));
+                insert.bindDouble(6, batch.getMaxTemp(i));
+                insert.bindLong(7, batch.getHumidity(i));
+                insert.bindDouble(8, batch.getPressure(i));
+                insert.bindDouble(9, batch.getWindSpeed(i));
+                insert.bindDouble(10, batch.getDegrees(i));
+                if (insert.executeInsert() != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        getContext().getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        if (folded > 0) {
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.AggregateEntry.CONTENT_URI, null);
+        }
+        return returnCount;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -23,6 +23,9 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.Toast;
@@ -34,6 +37,8 @@ import com.google.android.gms.gcm.GcmListenerService;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.List;
+
 public class MyGcmListenerService extends GcmListenerService {
 
     private static final String TAG = "MyGcmListenerService";
@@ -44,6 +49,12 @@ public class MyGcmListenerService extends GcmListenerService {
 
     public static final int NOTIFICATION_ID = 1;
 
+    // Lines shown in the notification when it holds several alerts
+    private static final int MAX_INBOX_LINES = 5;
+
+    // Decoded once, as every alert shows the same icon
+    private static Bitmap sLargeIcon;
+
     /**
      * Called when message is received.
      *
@@ -69,7 +80,7 @@ public class MyGcmListenerService extends GcmListenerService {
                     String location = jsonObject.getString(EXTRA_LOCATION);
                     String alert =
                             String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
+                    onAlert(weather, location, alert);
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -80,31 +91,87 @@ public class MyGcmListenerService extends GcmListenerService {
     }
 
     /**
-     *  Put the message into a notification and post it.
-     *  This is just one simple example of what you might choose to do with a GCM message.
+     * Passes the alert through the {@link WeatherAlertPipeline}, which drops repeats and holds
+     * alerts back while the notification was posted too recently.
      *
      * @param message The alert message to be posted.
      */
-    private void sendNotification(String message) {
+    private void onAlert(String weather, String location, String message) {
+        long now = SystemClock.elapsedRealtime();
+        switch (WeatherAlertPipeline.offer(weather, location, message, now)) {
+            case WeatherAlertPipeline.RESULT_POST:
+                sendNotification(this, WeatherAlertPipeline.takeBatch(now));
+                break;
+            case WeatherAlertPipeline.RESULT_POST_LATER:
+                // The service may be stopped by then, so the post mustn't hold on to it
+                final Context context = getApplicationContext();
+                new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendNotification(context, WeatherAlertPipeline.takeBatch(
+                                SystemClock.elapsedRealtime()));
+                    }
+                }, WeatherAlertPipeline.getPostDelay(now));
+                break;
+        }
+    }
+
+    /**
+     *  Put the alerts into a notification and post it, replacing the one posted before.
+     *  This is just one simple example of what you might choose to do with a GCM message.
+     *
+     * @param batch The alerts to be posted, or null if there are none left to post.
+     */
+    private static void sendNotification(Context context, WeatherAlertPipeline.Batch batch) {
+        if (batch == null) {
+            return;
+        }
         NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        PendingIntent contentIntent =
-                PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
-
-        // Notifications using both a large and a small icon (which yours should!) need the large
-        // icon as a bitmap. So we need to create that here from the resource ID, and pass the
-        // object along in our notification builder. Generally, you want to use the app icon as the
-        // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), 0);
+
+        List<String> messages = batch.messages;
+        String message = messages.get(0);
         NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(this)
+                new NotificationCompat.Builder(context)
                         .setSmallIcon(R.drawable.art_clear)
-                        .setLargeIcon(largeIcon)
-                        .setContentTitle("Weather Alert!")
-                        .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
+                        .setLargeIcon(getLargeIcon(context))
                         .setContentText(message)
                         .setPriority(NotificationCompat.PRIORITY_HIGH);
+        if (messages.size() == 1) {
+            mBuilder.setContentTitle(context.getString(R.string.gcm_weather_alert_title))
+                    .setStyle(new NotificationCompat.BigTextStyle().bigText(message));
+        } else {
+            String title = context.getString(R.string.gcm_weather_alerts_title, messages.size());
+            NotificationCompat.InboxStyle style =
+                    new NotificationCompat.InboxStyle().setBigContentTitle(title);
+            for (int i = 0; i < messages.size() && i < MAX_INBOX_LINES; i++) {
+                style.addLine(messages.get(i));
+            }
+            if (messages.size() > MAX_INBOX_LINES) {
+                style.setSummaryText(context.getString(R.string.gcm_weather_alerts_more,
+                        messages.size() - MAX_INBOX_LINES));
+            }
+            mBuilder.setContentTitle(title)
+                    .setNumber(messages.size())
+                    .setStyle(style);
+        }
         mBuilder.setContentIntent(contentIntent);
         mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
     }
+
+    /**
+     * Notifications using both a large and a small icon (which yours should!) need the large
+     * icon as a bitmap. So we need to create that from the resource ID, and pass the object
+     * along in our notification builder. Generally, you want to use the app icon as the small
+     * icon, so that users understand what app is triggering this notification.
+     */
+    private static synchronized Bitmap getLargeIcon(Context context) {
+        if (sLargeIcon == null) {
+            sLargeIcon = BitmapFactory.decodeResource(context.getResources(),
+                    R.drawable.art_storm);
+        }
+        return sLargeIcon;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides what to do with each weather alert pushed over GCM.
+ *
+ * An alert for the same weather and location as one received within
+ * {@link #DEDUP_WINDOW_MILLIS} is dropped.  The others are gathered into a single notification
+ * holding every alert received within that window, which is posted at most once every
+ * {@link #MIN_POST_INTERVAL_MILLIS}; alerts that come sooner wait for the next post, so a burst
+ * makes one or two notifications rather than one for each alert.
+ *
+ * The GCM listener runs in the app process, so in-memory state is shared with every message.
+ */
+public class WeatherAlertPipeline {
+    private static final String LOG_TAG = WeatherAlertPipeline.class.getSimpleName();
+
+    static final long DEDUP_WINDOW_MILLIS = 30 * 60 * 1000;
+    static final long MIN_POST_INTERVAL_MILLIS = 15 * 1000;
+
+    /**
+     * The alert repeats one received within the dedup window and was dropped.
+     */
+    static final int RESULT_SUPPRESSED = 0;
+    /**
+     * The notification may be posted now; take a {@link Batch} and post it.
+     */
+    static final int RESULT_POST = 1;
+    /**
+     * The notification was posted too recently.  Take a {@link Batch} after
+     * {@link #getPostDelay(long)} and post it.
+     */
+    static final int RESULT_POST_LATER = 2;
+    /**
+     * The alert will be in a post that is already waiting.
+     */
+    static final int RESULT_BATCHED = 3;
+
+    // When each (weather, location) pair was last received
+    private static final Map<String, Long> sLastReceived = new HashMap<>();
+    // The alerts in the notification, newest first
+    private static final LinkedList<Alert> sAlerts = new LinkedList<>();
+    private static long sLastPostTime;
+    private static boolean sPosted;
+    private static boolean sPostPending;
+
+    private static int sReceivedCount;
+    private static int sSuppressedCount;
+    private static int sBatchedCount;
+    private static int sPostedCount;
+
+    private static class Alert {
+        final String message;
+        final long receivedTime;
+
+        Alert(String message, long receivedTime) {
+            this.message = message;
+            this.receivedTime = receivedTime;
+        }
+    }
+
+    /**
+     * What the notification should show.
+     */
+    static class Batch {
+        /**
+         * The alerts' messages, newest first.
+         */
+        final List<String> messages;
+
+        Batch(List<String> messages) {
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * Called for every alert received.
+     *
+     * @param message the text to show for the alert
+     * @return one of the RESULT constants, saying what the caller should do next.
+     */
+    static synchronized int offer(String weather, String location, String message, long now) {
+        sReceivedCount++;
+        String key = weather + "\n" + location;
+        Long lastReceived = sLastReceived.get(key);
+        if (lastReceived != null && now - lastReceived < DEDUP_WINDOW_MILLIS) {
+            sSuppressedCount++;
+            Log.d(LOG_TAG, "Dropped repeated alert for " + weather + " in " + location + " ("
+                    + sSuppressedCount + " of " + sReceivedCount + " suppressed)");
+            return RESULT_SUPPRESSED;
+        }
+        sLastReceived.put(key, now);
+        sAlerts.addFirst(new Alert(message, now));
+        expire(now);
+
+        if (sPostPending) {
+            sBatchedCount++;
+            return RESULT_BATCHED;
+        }
+        if (!sPosted || now - sLastPostTime >= MIN_POST_INTERVAL_MILLIS) {
+            return RESULT_POST;
+        }
+        sPostPending = true;
+        sBatchedCount++;
+        return RESULT_POST_LATER;
+    }
+
+    /**
+     * @return how long to wait before taking the batch after {@link #RESULT_POST_LATER}.
+     */
+    static synchronized long getPostDelay(long now) {
+        return Math.max(sLastPostTime + MIN_POST_INTERVAL_MILLIS - now, 0);
+    }
+
+    /**
+     * Called just before posting the notification.
+     *
+     * @return the alerts to show, or null if all have expired.
+     */
+    static synchronized Batch takeBatch(long now) {
+        sPostPending = false;
+        expire(now);
+        if (sAlerts.isEmpty()) {
+            return null;
+        }
+        List<String> messages = new ArrayList<>(sAlerts.size());
+        for (Alert alert : sAlerts) {
+            messages.add(alert.message);
+        }
+        sPosted = true;
+        sLastPostTime = now;
+        sPostedCount++;
+        Log.d(LOG_TAG, "Posting " + messages.size() + " alerts (" + sReceivedCount
+                + " received, " + sSuppressedCount + " suppressed, " + sBatchedCount
+                + " batched, " + sPostedCount + " posts)");
+        return new Batch(messages);
+    }
+
+    /**
+     * Forgets alerts older than the dedup window, so they leave the notification and may be
+     * shown again.
+     */
+    private static void expire(long now) {
+        while (!sAlerts.isEmpty() && now - sAlerts.getLast().receivedTime >= DEDUP_WINDOW_MILLIS) {
+            sAlerts.removeLast();
+        }
+        Iterator<Long> iterator = sLastReceived.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next() >= DEDUP_WINDOW_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    static synchronized void reset() {
+        sLastReceived.clear();
+        sAlerts.clear();
+        sPosted = false;
+        sPostPending = false;
+        sReceivedCount = 0;
+        sSuppressedCount = 0;
+        sBatchedCount = 0;
+        sPostedCount = 0;
+    }
+
+    public static synchronized int getReceivedCount() {
+        return sReceivedCount;
+    }
+
+    /**
+     * @return how many alerts were dropped as repeats.
+     */
+    public static synchronized int getSuppressedCount() {
+        return sSuppressedCount;
+    }
+
+    /**
+     * @return how many alerts waited for a later post rather than being posted on arrival.
+     */
+    public static synchronized int getBatchedCount() {
+        return sBatchedCount;
+    }
+
+    /**
+     * @return how many times the notification was posted.
+     */
+    public static synchronized int getPostedCount() {
+        return sPostedCount;
+    }
+}
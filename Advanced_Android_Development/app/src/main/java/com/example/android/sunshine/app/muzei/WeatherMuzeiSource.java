@@ -16,13 +16,12 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.TodaySummaryPublisher;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
@@ -30,13 +29,6 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -48,32 +40,31 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
         boolean dataUpdated = intent != null &&
                 SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction());
         if (dataUpdated && isEnabled()) {
-            onUpdate(UPDATE_REASON_OTHER);
+            // Don't republish the same artwork if today's weather didn't actually change
+            TodaySummaryPublisher.TodaySummary summary = TodaySummaryPublisher.get(this);
+            if (summary != null && !TodaySummaryPublisher.hasRendered(this,
+                    TodaySummaryPublisher.CONSUMER_MUZEI, summary)) {
+                onUpdate(UPDATE_REASON_OTHER);
+            }
         }
     }
 
     @Override
     protected void onUpdate(int reason) {
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        TodaySummaryPublisher.TodaySummary summary = TodaySummaryPublisher.get(this);
+        if (summary != null) {
+            String imageUrl = Utility.getImageUrlForWeatherCondition(summary.weatherId);
             // Only publish a new wallpaper if we have a valid image
             if (imageUrl != null) {
                 publishArtwork(new Artwork.Builder()
                         .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
+                        .title(summary.description)
+                        .byline(summary.locationSetting)
                         .viewIntent(new Intent(this, MainActivity.class))
                         .build());
+                TodaySummaryPublisher.markRendered(this, TodaySummaryPublisher.CONSUMER_MUZEI,
+                        summary);
             }
         }
-        cursor.close();
     }
 }
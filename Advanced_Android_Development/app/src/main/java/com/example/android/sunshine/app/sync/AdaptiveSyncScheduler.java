@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Picks the periodic sync interval from how much the forecast has been changing between syncs
+ * and how often the user opens the app.
+ *
+ * A volatile forecast or a frequent user shortens the interval; a stable forecast or an idle
+ * app lengthens it.  The interval always stays between {@link #MIN_SYNC_INTERVAL} and
+ * {@link #MAX_SYNC_INTERVAL}.  Nothing else sets the period of the periodic sync.
+ */
+public class AdaptiveSyncScheduler {
+    private static final String LOG_TAG = AdaptiveSyncScheduler.class.getSimpleName();
+
+    // Intervals are in seconds, like SunshineSyncAdapter.SYNC_INTERVAL
+    static final int MIN_SYNC_INTERVAL = 60 * 60;
+    static final int MAX_SYNC_INTERVAL = 60 * 60 * 12;
+
+    // A forecast moving by this much per sync (mean degrees C per day) keeps the base interval
+    static final double TYPICAL_CHANGE = 1.5;
+    // A user opening the app this many times a day keeps the base interval
+    static final double TYPICAL_OPENS_PER_DAY = 2.0;
+
+    // Neither signal on its own can move the interval more than 2x either way
+    private static final double MIN_FACTOR = 0.5;
+    private static final double MAX_FACTOR = 2.0;
+
+    // Changing the weather condition group (e.g. rain to clear) counts as this many degrees
+    static final double CONDITION_CHANGE_WEIGHT = 5.0;
+
+    // Don't bother the sync framework for changes smaller than this fraction of the interval
+    private static final double RECONFIGURE_THRESHOLD = 0.15;
+
+    private static final int CHANGE_HISTORY_SIZE = 8;
+    private static final int OPEN_HISTORY_SIZE = 100;
+    static final long USAGE_WINDOW_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String PREF_CHANGE_HISTORY = "adaptive_sync_change_history";
+    private static final String PREF_OPEN_HISTORY = "adaptive_sync_open_history";
+    private static final String PREF_SYNC_INTERVAL = "adaptive_sync_interval";
+
+    /**
+     * @param meanChange recent mean forecast change per sync, see {@link #scoreChange}
+     * @param opensPerDay how many times a day the app has recently been opened
+     * @return the periodic sync interval to use, in seconds
+     */
+    static int computeSyncInterval(double meanChange, double opensPerDay) {
+        double volatilityFactor = clamp(TYPICAL_CHANGE / Math.max(meanChange, 0.01),
+                MIN_FACTOR, MAX_FACTOR);
+        double usageFactor = clamp(TYPICAL_OPENS_PER_DAY / Math.max(opensPerDay, 0.01),
+                MIN_FACTOR, MAX_FACTOR);
+        double interval = SunshineSyncAdapter.SYNC_INTERVAL * volatilityFactor * usageFactor;
+        return (int) clamp(interval, MIN_SYNC_INTERVAL, MAX_SYNC_INTERVAL);
+    }
+
+    /**
+     * Scores how much one day's forecast changed between two syncs: the mean movement of the
+     * high and low, plus a fixed penalty if the condition group changed.
+     */
+    static double scoreChange(double oldHigh, double oldLow, int oldWeatherId,
+                              double newHigh, double newLow, int newWeatherId) {
+        double score = (Math.abs(newHigh - oldHigh) + Math.abs(newLow - oldLow)) / 2;
+        if (oldWeatherId / 100 != newWeatherId / 100) {
+            score += CONDITION_CHANGE_WEIGHT;
+        }
+        return score;
+    }
+
+    static double mean(double[] values) {
+        if (values.length == 0) {
+            return TYPICAL_CHANGE;
+        }
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * @return the mean number of app opens per day in the usage window ending at now.
+     */
+    static double opensPerDay(long[] openTimes, long now) {
+        int count = 0;
+        for (long openTime : openTimes) {
+            if (now - openTime <= USAGE_WINDOW_MILLIS) {
+                count++;
+            }
+        }
+        return count / (USAGE_WINDOW_MILLIS / (24.0 * 60 * 60 * 1000));
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Records that the user opened the app.
+     */
+    public static void recordAppOpen(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        long now = System.currentTimeMillis();
+        long[] opens = parseLongs(prefs.getString(PREF_OPEN_HISTORY, ""));
+        StringBuilder history = new StringBuilder();
+        // Keep only recent opens, and at most OPEN_HISTORY_SIZE of them
+        int start = Math.max(0, opens.length - OPEN_HISTORY_SIZE + 1);
+        for (int i = start; i < opens.length; i++) {
+            if (now - opens[i] <= USAGE_WINDOW_MILLIS) {
+                history.append(opens[i]).append(',');
+            }
+        }
+        history.append(now);
+        prefs.edit().putString(PREF_OPEN_HISTORY, history.toString()).apply();
+    }
+
+    /**
+     * Sets up the periodic sync at the interval last chosen, or the default one if none has
+     * been yet.  Called when the sync account is created, so that it doesn't start over at the
+     * default interval.
+     */
+    static void schedulePeriodicSync(Context context) {
+        int interval = PreferenceManager.getDefaultSharedPreferences(context)
+                .getInt(PREF_SYNC_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+        SunshineSyncAdapter.configurePeriodicSync(context, interval, interval / 3);
+    }
+
+    /**
+     * Records how much the forecast changed in the sync that just finished, and moves the
+     * periodic sync to a new interval if the history calls for it.  Must be called from the
+     * sync thread.
+     */
+    static void onForecastSynced(Context context, double changeScore) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        double[] changes = parseDoubles(prefs.getString(PREF_CHANGE_HISTORY, ""));
+        StringBuilder history = new StringBuilder();
+        int start = Math.max(0, changes.length - CHANGE_HISTORY_SIZE + 1);
+        for (int i = start; i < changes.length; i++) {
+            history.append(changes[i]).append(',');
+        }
+        history.append(changeScore);
+        String changeHistory = history.toString();
+
+        int interval = computeSyncInterval(mean(parseDoubles(changeHistory)),
+                opensPerDay(parseLongs(prefs.getString(PREF_OPEN_HISTORY, "")),
+                        System.currentTimeMillis()));
+        int currentInterval = prefs.getInt(PREF_SYNC_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+        SharedPreferences.Editor editor = prefs.edit().putString(PREF_CHANGE_HISTORY, changeHistory);
+        if (Math.abs(interval - currentInterval) >= currentInterval * RECONFIGURE_THRESHOLD) {
+            Log.d(LOG_TAG, "Moving periodic sync from " + currentInterval + "s to "
+                    + interval + "s");
+            SunshineSyncAdapter.configurePeriodicSync(context, interval, interval / 3);
+            editor.putInt(PREF_SYNC_INTERVAL, interval);
+        }
+        editor.commit();
+    }
+
+    private static double[] parseDoubles(String joined) {
+        if (TextUtils.isEmpty(joined)) {
+            return new double[0];
+        }
+        String[] parts = joined.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i]);
+        }
+        return values;
+    }
+
+    private static long[] parseLongs(String joined) {
+        if (TextUtils.isEmpty(joined)) {
+            return new long[0];
+        }
+        String[] parts = joined.split(",");
+        long[] values = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Long.parseLong(parts[i]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Replays a forecast saved from OpenWeatherMap instead of going to the network, for working
+ * offline and for measuring parse and write cost without network noise.
+ *
+ * Debug builds use it whenever {@link #FIXTURE_FILE_NAME} exists in the app's files directory.
+ */
+public class FixtureForecastSource extends OwmForecastSource {
+    public static final String FIXTURE_FILE_NAME = "forecast_fixture.json";
+
+    private final File mFile;
+
+    public FixtureForecastSource(File file) {
+        mFile = file;
+    }
+
+    public static File getFixtureFile(Context context) {
+        return new File(context.getFilesDir(), FIXTURE_FILE_NAME);
+    }
+
+    @Override
+    public String load(Context context) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(mFile), "UTF-8");
+        try {
+            StringBuilder payload = new StringBuilder((int) mFile.length());
+            char[] buffer = new char[8 * 1024];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                payload.append(buffer, 0, read);
+            }
+            return payload.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
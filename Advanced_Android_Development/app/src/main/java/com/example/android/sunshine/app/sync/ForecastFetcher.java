@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetches a forecast over HTTP, asking for a compressed response and decoding it ourselves so we
+ * can tell how many bytes actually crossed the wire.
+ *
+ * We set Accept-Encoding explicitly, which turns off HttpURLConnection's transparent gzip
+ * handling; in exchange we also get deflate, and the counts below are exact.
+ */
+public class ForecastFetcher {
+
+    static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    static final int READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final String PREF_LAST_WIRE_BYTES = "fetch_last_wire_bytes";
+    private static final String PREF_LAST_DECODED_BYTES = "fetch_last_decoded_bytes";
+    private static final String PREF_TOTAL_WIRE_BYTES = "fetch_total_wire_bytes";
+    private static final String PREF_TOTAL_DECODED_BYTES = "fetch_total_decoded_bytes";
+
+    /**
+     * A fetched body and what it cost to transfer.
+     */
+    public static final class Response {
+        public final String body;
+        // The Content-Encoding of the response, or null if it was not compressed
+        public final String contentEncoding;
+        // Bytes read off the connection, before decompression
+        public final long wireBytes;
+        // Bytes of the body after decompression, before UTF-8 decoding
+        public final long decodedBytes;
+
+        Response(String body, String contentEncoding, long wireBytes, long decodedBytes) {
+            this.body = body;
+            this.contentEncoding = contentEncoding;
+            this.wireBytes = wireBytes;
+            this.decodedBytes = decodedBytes;
+        }
+    }
+
+    /**
+     * @return the response, or null if the server sent no body.
+     * @throws IOException if the connection fails, times out, or the server returns an error.
+     */
+    public Response fetch(URL url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        try {
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            urlConnection.setRequestProperty("Accept-Charset", "utf-8");
+            urlConnection.connect();
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                return null;
+            }
+            String encoding = urlConnection.getContentEncoding();
+            CountingInputStream wire = new CountingInputStream(inputStream);
+            CountingInputStream decoded = new CountingInputStream(decompress(wire, encoding));
+            Reader reader = new InputStreamReader(decoded, UTF_8.newDecoder());
+            try {
+                StringBuilder body = new StringBuilder();
+                char[] buffer = new char[BUFFER_SIZE];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    body.append(buffer, 0, read);
+                }
+                return new Response(body.toString(), encoding, wire.getCount(),
+                        decoded.getCount());
+            } finally {
+                reader.close();
+            }
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+
+    private static InputStream decompress(InputStream in, String encoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            // HTTP "deflate" is the zlib format, which InflaterInputStream expects by default
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * Remembers the transfer sizes of the last sync and keeps running totals.
+     */
+    static void recordTransfer(Context context, Response response) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        prefs.edit()
+                .putLong(PREF_LAST_WIRE_BYTES, response.wireBytes)
+                .putLong(PREF_LAST_DECODED_BYTES, response.decodedBytes)
+                .putLong(PREF_TOTAL_WIRE_BYTES,
+                        prefs.getLong(PREF_TOTAL_WIRE_BYTES, 0) + response.wireBytes)
+                .putLong(PREF_TOTAL_DECODED_BYTES,
+                        prefs.getLong(PREF_TOTAL_DECODED_BYTES, 0) + response.decodedBytes)
+                .apply();
+    }
+
+    public static long getLastWireBytes(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_LAST_WIRE_BYTES, 0);
+    }
+
+    public static long getLastDecodedBytes(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_LAST_DECODED_BYTES, 0);
+    }
+
+    public static long getTotalWireBytes(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_TOTAL_WIRE_BYTES, 0);
+    }
+
+    public static long getTotalDecodedBytes(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_TOTAL_DECODED_BYTES, 0);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * Somewhere the sync adapter can get a daily forecast from.
+ *
+ * Loading and parsing are separate steps, so a payload can be captured once and parsed over and
+ * over when measuring a source's parse throughput.
+ */
+public interface ForecastSource {
+
+    /**
+     * Thrown when the source doesn't know the location it was asked for.
+     */
+    class InvalidLocationException extends Exception {
+        public InvalidLocationException(String detailMessage) {
+            super(detailMessage);
+        }
+    }
+
+    /**
+     * Loads the raw forecast for the user's preferred location.
+     *
+     * @return the payload, empty if the source had nothing to say, or null if there is nothing
+     * to do.
+     */
+    String load(Context context) throws IOException;
+
+    /**
+     * @param payload what {@link #load} returned
+     * @throws IOException if the payload reports a server error
+     * @throws JSONException if the payload is malformed
+     * @throws InvalidLocationException if the payload says the location is unknown
+     */
+    ForecastBatch parse(String payload)
+            throws IOException, JSONException, InvalidLocationException;
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * The OpenWeatherMap daily forecast endpoint.
+ */
+public class OwmForecastSource implements ForecastSource {
+    private static final String LOG_TAG = OwmForecastSource.class.getSimpleName();
+
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    private static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    private static final int NUM_DAYS = 14;
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    @Override
+    public String load(Context context) throws IOException {
+        Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. So we need to check
+        // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
+        // service may not understand the location address provided by the Place Picker API
+        // and the user could end up with no weather! The horror!
+        if (Utility.isLocationLatLonAvailable(context)) {
+            uriBuilder.appendQueryParameter(LAT_PARAM,
+                    String.valueOf(Utility.getLocationLatitude(context)))
+                    .appendQueryParameter(LON_PARAM,
+                            String.valueOf(Utility.getLocationLongitude(context)));
+        } else {
+            uriBuilder.appendQueryParameter(QUERY_PARAM, Utility.getPreferredLocation(context));
+        }
+
+        Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, FORMAT)
+                .appendQueryParameter(UNITS_PARAM, UNITS)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+
+        ForecastFetcher.Response response = new ForecastFetcher().fetch(new URL(builtUri.toString()));
+        if (response == null) {
+            return null;
+        }
+        Log.d(LOG_TAG, "Fetched " + response.wireBytes + " bytes ("
+                + response.decodedBytes + " decoded, encoding " + response.contentEncoding + ")");
+        ForecastFetcher.recordTransfer(context, response);
+        return response.body;
+    }
+
+    /**
+     * Parses OWM's daily forecast JSON.
+     *
+     * OWM returns daily forecasts based upon the local time of the city that is being asked for,
+     * and always starts with the current day, so we number the days from today's local date and
+     * store them as normalized UTC dates.
+     */
+    @Override
+    public ForecastBatch parse(String payload)
+            throws IOException, JSONException, InvalidLocationException {
+        JSONObject forecastJson = new JSONObject(payload);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+
+            switch (errorCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    throw new InvalidLocationException("OWM does not know this location");
+                default:
+                    throw new IOException("OWM returned error code " + errorCode);
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        String cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        ForecastBatch batch = new ForecastBatch(cityName, cityLatitude, cityLongitude,
+                weatherArray.length());
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        // now we work exclusively in UTC
+        dayTime = new Time();
+
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            long dateTime = dayTime.setJulianDay(julianStartDay + i);
+
+            double pressure = dayForecast.getDouble(OWM_PRESSURE);
+            int humidity = dayForecast.getInt(OWM_HUMIDITY);
+            double windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            double windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            String description = weatherObject.getString(OWM_DESCRIPTION);
+            int weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            double high = temperatureObject.getDouble(OWM_MAX);
+            double low = temperatureObject.getDouble(OWM_MIN);
+
+            batch.add(dateTime, weatherId, description, low, high, humidity, pressure,
+                    windSpeed, windDirection);
+        }
+        return batch;
+    }
+}
@@ -7,10 +7,9 @@ import android.app.Activity;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
+import android.content.ContentProvider;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
@@ -24,11 +23,11 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
@@ -36,7 +35,10 @@ import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.LocationRegistry;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -46,20 +48,13 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.SimpleDateFormat;
-import java.util.Vector;
 import java.util.concurrent.ExecutionException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks,GoogleApiClient.OnConnectionFailedListener{
@@ -79,19 +74,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
     public static final String TODAY_WEATHER_KEY = "/today-weather";
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -110,298 +92,169 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
 
-        // We no longer need just the location String, but also potentially the latitude and
-        // longitude, in case we are syncing based on a new Place Picker API result.
         Context context = getContext();
         String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        String locationKey = SyncGate.getLocationKey(context);
+        SyncGate.onSyncStarted(locationKey, SystemClock.elapsedRealtime());
+        // Only a forecast actually written makes the location fresh; the location status may
+        // still say OK from an earlier sync
+        boolean success = false;
 
         try {
 
             mGoogleApiClient = new GoogleApiClient.Builder(context).addApi(Wearable.API).addConnectionCallbacks(this)
                     .addOnConnectionFailedListener(this).build();
 
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
-
-            // Instead of always building the query based off of the location string, we want to
-            // potentially build a query using a lat/lon value. This will be the case when we are
-            // syncing based off of a new location from the Place Picker API. So we need to check
-            // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
-            // service may not understand the location address provided by the Place Picker API
-            // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
-            } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
-            }
-
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
+            ForecastSource source = getForecastSource(context);
+            String payload = source.load(context);
+            if (payload == null) {
                 // Nothing to do.
                 return;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
+            if (payload.length() == 0) {
                 // Stream was empty.  No point in parsing.
                 setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                SyncRetryScheduler.onSyncFailed(context);
                 return;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            writeForecast(provider, source.parse(payload), locationQuery);
+            success = true;
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            // Try again soon rather than waiting for the next periodic sync
+            SyncRetryScheduler.onSyncFailed(context);
+        } catch (ForecastSource.InvalidLocationException e) {
+            Log.w(LOG_TAG, e.getMessage());
+            setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            SyncGate.onSyncFinished(locationKey, success, SystemClock.elapsedRealtime());
         }
         return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @return the fixture source if this is a debug build and a fixture has been pushed to the
+     * device, otherwise OpenWeatherMap.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+    private static ForecastSource getForecastSource(Context context) {
+        if (BuildConfig.DEBUG) {
+            File fixture = FixtureForecastSource.getFixtureFile(context);
+            if (fixture.exists()) {
+                return new FixtureForecastSource(fixture);
             }
+        }
+        return new OwmForecastSource();
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+    /**
+     * Writes a parsed forecast to the provider, replacing what we had for those days and
+     * dropping days before it, then lets everybody who shows today's weather know.
+     *
+     * The provider normally lives in our process, in which case the batch goes to it directly
+     * instead of through one ContentValues per day.
+     */
+    private void writeForecast(ContentProviderClient provider, ForecastBatch batch,
+                               String locationSetting) {
+        Context context = getContext();
+        long locationId = addLocation(locationSetting, batch.getCityName(),
+                batch.getCityLatitude(), batch.getCityLongitude());
+
+        // add to database
+        if (batch.size() > 0) {
+            double forecastChange = scoreForecastChange(locationId, batch);
+            ContentProvider localProvider = provider.getLocalContentProvider();
+            if (localProvider instanceof WeatherProvider) {
+                ((WeatherProvider) localProvider).bulkInsert(locationId, batch);
+            } else {
+                context.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                        batch.toContentValues(locationId));
+            }
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+            // move old days out of the weather table, into the history if we're keeping it
+            Uri expiredUri = Utility.isHistoryEnabled(context)
+                    ? WeatherContract.WeatherEntry.buildWeatherArchiveUri(
+                            Utility.getHistoryRowBudget(context))
+                    : WeatherContract.WeatherEntry.CONTENT_URI;
+            context.getContentResolver().delete(expiredUri,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[] {Long.toString(batch.getDate(0) - DAY_IN_MILLIS)});
+
+            // Work out today's weather once; every consumer below shares the result
+            TodaySummaryPublisher.TodaySummary today = TodaySummaryPublisher.publish(context);
+            if (today != null) {
+                storeCurrentDayWeather(today);
+            }
+            updateWidgets();
+            updateMuzei();
+            notifyWeather(today);
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+            if (forecastChange >= 0) {
+                AdaptiveSyncScheduler.onForecastSynced(context, forecastChange);
+            }
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + batch.size() + " Inserted");
+        setLocationStatus(context, LOCATION_STATUS_OK);
+        SyncRetryScheduler.onSyncSucceeded(context);
+    }
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+    private static final String[] FORECAST_CHANGE_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+    // these indices must match the projection
+    private static final int INDEX_CHANGE_DATE = 0;
+    private static final int INDEX_CHANGE_MAX_TEMP = 1;
+    private static final int INDEX_CHANGE_MIN_TEMP = 2;
+    private static final int INDEX_CHANGE_WEATHER_ID = 3;
 
-                //fetch current day's weather
-                if(i==0)
-                {
-                    storeCurrentDayWeather(dateTime,high,low,weatherId);
+    /**
+     * Compares the forecast we are about to write against the one already stored for the same
+     * location and days.
+     *
+     * @return the mean change per overlapping day, or -1 if there is nothing to compare with.
+     */
+    private double scoreForecastChange(long locationId, ForecastBatch forecast) {
+        long firstDate = forecast.getDate(0);
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                FORECAST_CHANGE_COLUMNS,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[] {Long.toString(locationId), Long.toString(firstDate)},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        double total = 0;
+        int days = 0;
+        try {
+            while (cursor.moveToNext()) {
+                int day = forecast.indexOfDate(cursor.getLong(INDEX_CHANGE_DATE));
+                if (day == -1) {
+                    continue;
                 }
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+                total += AdaptiveSyncScheduler.scoreChange(
+                        cursor.getDouble(INDEX_CHANGE_MAX_TEMP),
+                        cursor.getDouble(INDEX_CHANGE_MIN_TEMP),
+                        cursor.getInt(INDEX_CHANGE_WEATHER_ID),
+                        forecast.getMaxTemp(day),
+                        forecast.getMinTemp(day),
+                        forecast.getWeatherId(day));
+                days++;
             }
-
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
-
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        } finally {
+            cursor.close();
         }
+        return days == 0 ? -1 : total / days;
     }
 
     private void updateWidgets() {
@@ -422,7 +275,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
     }
 
-    private void notifyWeather() {
+    private void notifyWeather(TodaySummaryPublisher.TodaySummary today) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -437,18 +290,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != null) {
+                    int weatherId = today.weatherId;
+                    double high = today.high;
+                    double low = today.low;
+                    String desc = today.description;
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -524,7 +370,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
@@ -539,50 +384,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
      * @return the row ID of the added location.
      */
     long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+        // The registry remembers the row, so this only goes to the provider for a new location
+        LocationRegistry registry = LocationRegistry.getInstance(getContext());
+        long locationId = registry.addLocation(locationSetting, cityName, lat, lon);
+        if (BuildConfig.DEBUG) {
+            registry.logStats();
         }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
         return locationId;
     }
 
     /**
-     * Helper method to schedule the sync adapter periodic execution
+     * Helper method to schedule the sync adapter periodic execution.  Only
+     * {@link AdaptiveSyncScheduler} calls this, so that the period is set in one place.
      */
-    public static void configurePeriodicSync(Context context, int syncInterval, int flexTime) {
+    static void configurePeriodicSync(Context context, int syncInterval, int flexTime) {
         Account account = getSyncAccount(context);
         String authority = context.getString(R.string.content_authority);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
@@ -603,6 +418,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        // Skip the request if a sync for this location is already running or just finished
+        if (!SyncGate.tryAcquire(context)) {
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
@@ -651,9 +470,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
     private static void onAccountCreated(Account newAccount, Context context) {
         /*
-         * Since we've created an account
+         * Since we've created an account, start the periodic sync at whatever interval the
+         * adaptive scheduler last chose
          */
-        SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        AdaptiveSyncScheduler.schedulePeriodicSync(context);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -684,24 +504,28 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     /**
-     * Put weather related information into data item for wearable
-     * @param dateInMillis
-     * @param highTemp
-     * @param lowTemp
-     * @param weatherId
+     * Put today's weather into a data item for the wearable, unless the wearable already has
+     * this version of it.
+     * @param today the summary published for this sync
      */
-    private void storeCurrentDayWeather(long dateInMillis,double highTemp,double lowTemp,int weatherId)   {
+    private void storeCurrentDayWeather(final TodaySummaryPublisher.TodaySummary today) {
+        final Context context = getContext();
+        if (TodaySummaryPublisher.hasRendered(context, TodaySummaryPublisher.CONSUMER_WEAR, today)) {
+            return;
+        }
         if(!mResolvingError)
         {
             mGoogleApiClient.connect();
         PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(TODAY_WEATHER_KEY);
             SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy");
-            String date =  shortenedDateFormat.format(dateInMillis);
+            String date =  shortenedDateFormat.format(today.date);
         putDataMapRequest.getDataMap().putString("date",date);
 
-        putDataMapRequest.getDataMap().putString("high",Utility.formatTemperature(getContext(),highTemp));
-        putDataMapRequest.getDataMap().putString("low",Utility.formatTemperature(getContext(),lowTemp));
-        putDataMapRequest.getDataMap().putInt("conditionId",weatherId);
+        putDataMapRequest.getDataMap().putString("high",Utility.formatTemperature(context,today.high));
+        putDataMapRequest.getDataMap().putString("low",Utility.formatTemperature(context,today.low));
+        putDataMapRequest.getDataMap().putInt("conditionId",today.weatherId);
+        // Lets the wearable tell which of several queued updates is the newest
+        putDataMapRequest.getDataMap().putLong("version",today.version);
         PutDataRequest putDataRequest = putDataMapRequest.asPutDataRequest();
         putDataRequest.setUrgent();
         Wearable.DataApi.putDataItem(mGoogleApiClient,putDataRequest).setResultCallback(
@@ -711,6 +535,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                         if (!dataItemResult.getStatus().isSuccess()) {
                             Log.e(LOG_TAG, "ERROR: failed to putDataItem, status code: "
                                     + dataItemResult.getStatus().getStatusCode());
+                        } else {
+                            TodaySummaryPublisher.markRendered(context,
+                                    TodaySummaryPublisher.CONSUMER_WEAR, today);
                         }
                     }
                 }
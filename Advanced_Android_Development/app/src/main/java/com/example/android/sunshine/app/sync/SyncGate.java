@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+
+/**
+ * Decides whether an immediate sync request actually needs a fetch.
+ *
+ * Requests for a location that already has a fetch in flight are coalesced into it, and requests
+ * for a location fetched successfully within {@link #FRESHNESS_WINDOW_MILLIS} are dropped.  A
+ * request for a different location always goes through.
+ *
+ * The sync adapter runs in the app process, so in-memory state is shared with every caller.
+ */
+public class SyncGate {
+    private static final String LOG_TAG = SyncGate.class.getSimpleName();
+
+    static final long FRESHNESS_WINDOW_MILLIS = 5 * 60 * 1000;
+    // The framework may hold an expedited sync back (e.g. no network) or drop it altogether, so
+    // an in-flight request only blocks others for this long
+    static final long IN_FLIGHT_TIMEOUT_MILLIS = 2 * 60 * 1000;
+
+    private static String sInFlightLocation;
+    private static long sInFlightSince;
+    private static String sFreshLocation;
+    private static long sFreshSince;
+
+    private static int sRequestCount;
+    private static int sCoalescedCount;
+    private static int sSuppressedCount;
+
+    /**
+     * @return the key identifying what a sync for the current settings would fetch.
+     */
+    static String getLocationKey(Context context) {
+        if (Utility.isLocationLatLonAvailable(context)) {
+            return Utility.getLocationLatitude(context) + "," + Utility.getLocationLongitude(context);
+        }
+        return Utility.getPreferredLocation(context);
+    }
+
+    /**
+     * Called for every immediate sync request.
+     *
+     * @return true if the caller should go ahead and request a sync.
+     */
+    static boolean tryAcquire(Context context) {
+        return tryAcquire(getLocationKey(context), SystemClock.elapsedRealtime());
+    }
+
+    static synchronized boolean tryAcquire(String locationKey, long now) {
+        sRequestCount++;
+        if (locationKey.equals(sInFlightLocation)
+                && now - sInFlightSince < IN_FLIGHT_TIMEOUT_MILLIS) {
+            sCoalescedCount++;
+            Log.d(LOG_TAG, "Coalesced sync request for " + locationKey + " (" + sCoalescedCount
+                    + " of " + sRequestCount + " coalesced)");
+            return false;
+        }
+        if (locationKey.equals(sFreshLocation) && now - sFreshSince < FRESHNESS_WINDOW_MILLIS) {
+            sSuppressedCount++;
+            Log.d(LOG_TAG, "Data for " + locationKey + " is fresh, skipping sync ("
+                    + sSuppressedCount + " of " + sRequestCount + " suppressed)");
+            return false;
+        }
+        sInFlightLocation = locationKey;
+        sInFlightSince = now;
+        return true;
+    }
+
+    /**
+     * Called by the sync adapter when any sync, immediate or periodic, starts fetching.
+     */
+    static synchronized void onSyncStarted(String locationKey, long now) {
+        sInFlightLocation = locationKey;
+        sInFlightSince = now;
+    }
+
+    /**
+     * Called by the sync adapter when a sync finishes, whether or not it succeeded.  Only a
+     * successful sync makes the location fresh.
+     */
+    static synchronized void onSyncFinished(String locationKey, boolean success, long now) {
+        if (locationKey.equals(sInFlightLocation)) {
+            sInFlightLocation = null;
+        }
+        if (success) {
+            sFreshLocation = locationKey;
+            sFreshSince = now;
+        } else if (locationKey.equals(sFreshLocation)) {
+            sFreshLocation = null;
+        }
+    }
+
+    static synchronized void reset() {
+        sInFlightLocation = null;
+        sFreshLocation = null;
+        sRequestCount = 0;
+        sCoalescedCount = 0;
+        sSuppressedCount = 0;
+    }
+
+    public static synchronized int getRequestCount() {
+        return sRequestCount;
+    }
+
+    /**
+     * @return how many requests were folded into a fetch that was already in flight.
+     */
+    public static synchronized int getCoalescedCount() {
+        return sCoalescedCount;
+    }
+
+    /**
+     * @return how many requests were dropped because the data was still fresh.
+     */
+    public static synchronized int getSuppressedCount() {
+        return sSuppressedCount;
+    }
+}
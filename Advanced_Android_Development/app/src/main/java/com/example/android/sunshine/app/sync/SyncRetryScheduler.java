@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.Random;
+
+/**
+ * Schedules retries of a failed sync with capped exponential backoff and jitter, instead of
+ * leaving the data stale until the next periodic sync.
+ *
+ * Retry state lives in SharedPreferences so that it survives the process being killed between
+ * attempts, and the alarm is set again after a reboot from what was saved there.  Retries are
+ * only attempted while the network is available: if it isn't when a retry comes due,
+ * {@link SyncRetryReceiver} waits for connectivity to come back instead.
+ */
+public class SyncRetryScheduler {
+    private static final String LOG_TAG = SyncRetryScheduler.class.getSimpleName();
+
+    static final String ACTION_RETRY_SYNC =
+            "com.example.android.sunshine.app.ACTION_RETRY_SYNC";
+
+    // First retry after about 30 seconds, doubling up to 30 minutes.  Past that we give up and
+    // let the periodic sync pick things up.
+    static final long BASE_DELAY_MILLIS = 30 * 1000;
+    static final long MAX_DELAY_MILLIS = 30 * 60 * 1000;
+    static final int MAX_ATTEMPTS = 8;
+
+    private static final String PREF_ATTEMPTS = "sync_retry_attempts";
+    private static final String PREF_FIRST_FAILURE = "sync_retry_first_failure";
+    private static final String PREF_NEXT_RETRY = "sync_retry_next_retry";
+    private static final String PREF_RECOVERIES = "sync_retry_recoveries";
+    private static final String PREF_LAST_RECOVERY_ATTEMPTS = "sync_retry_last_recovery_attempts";
+    private static final String PREF_LAST_RECOVERY_MILLIS = "sync_retry_last_recovery_millis";
+
+    private static final Random sRandom = new Random();
+
+    /**
+     * Returns how long to wait before the given retry attempt: the capped exponential delay
+     * with "equal jitter", i.e. somewhere between half of it and all of it.  Spreading retries
+     * out like this keeps many devices from hammering the server in lockstep when it comes back.
+     *
+     * @param attempt the 1-based retry attempt
+     */
+    static long computeDelayMillis(int attempt, Random random) {
+        long delay = BASE_DELAY_MILLIS << Math.min(attempt - 1, 16);
+        delay = Math.min(delay, MAX_DELAY_MILLIS);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    /**
+     * Records a failed sync caused by the server or network, and schedules the next retry.
+     */
+    public static synchronized void onSyncFailed(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        int attempts = prefs.getInt(PREF_ATTEMPTS, 0) + 1;
+        long now = System.currentTimeMillis();
+        SharedPreferences.Editor editor = prefs.edit();
+        if (attempts == 1) {
+            editor.putLong(PREF_FIRST_FAILURE, now);
+        }
+        editor.putInt(PREF_ATTEMPTS, attempts);
+
+        if (attempts > MAX_ATTEMPTS) {
+            Log.w(LOG_TAG, "Giving up after " + MAX_ATTEMPTS
+                    + " retries, waiting for the periodic sync");
+            // Start over, so the next failure backs off from the first delay again
+            editor.remove(PREF_ATTEMPTS)
+                    .remove(PREF_FIRST_FAILURE)
+                    .remove(PREF_NEXT_RETRY)
+                    .commit();
+            cancelAlarm(context);
+            setReceiverEnabled(context, false);
+            return;
+        }
+
+        long delay = computeDelayMillis(attempts, sRandom);
+        editor.putLong(PREF_NEXT_RETRY, now + delay).commit();
+
+        setAlarm(context, delay);
+        setReceiverEnabled(context, true);
+        Log.d(LOG_TAG, "Sync failed, retry " + attempts + " in " + delay / 1000 + "s");
+    }
+
+    /**
+     * Alarms don't survive a reboot, so sets the alarm for the pending retry again, if there is
+     * one.  A retry that came due while the device was off runs straight away.
+     *
+     * @return true if a retry is pending
+     */
+    static synchronized boolean rearm(Context context) {
+        long nextRetry = PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_NEXT_RETRY, -1);
+        if (nextRetry == -1) {
+            return false;
+        }
+        setAlarm(context, Math.max(nextRetry - System.currentTimeMillis(), 0));
+        return true;
+    }
+
+    /**
+     * Records a successful sync, clearing any pending retry and reporting how long it took to
+     * recover if we were retrying.
+     */
+    public static synchronized void onSyncSucceeded(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        int attempts = prefs.getInt(PREF_ATTEMPTS, 0);
+        if (attempts == 0) {
+            return;
+        }
+        long timeToRecover = System.currentTimeMillis() - prefs.getLong(PREF_FIRST_FAILURE, 0);
+        prefs.edit()
+                .remove(PREF_ATTEMPTS)
+                .remove(PREF_FIRST_FAILURE)
+                .remove(PREF_NEXT_RETRY)
+                .putInt(PREF_RECOVERIES, prefs.getInt(PREF_RECOVERIES, 0) + 1)
+                .putInt(PREF_LAST_RECOVERY_ATTEMPTS, attempts)
+                .putLong(PREF_LAST_RECOVERY_MILLIS, timeToRecover)
+                .commit();
+        cancelAlarm(context);
+        setReceiverEnabled(context, false);
+        Log.d(LOG_TAG, "Recovered after " + attempts + " failed attempts in "
+                + timeToRecover / 1000 + "s");
+    }
+
+    /**
+     * Runs the pending retry if it is due and the network is there to run it.
+     *
+     * @return true if a sync was requested
+     */
+    static synchronized boolean retryIfDue(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        long nextRetry = prefs.getLong(PREF_NEXT_RETRY, -1);
+        if (nextRetry == -1 || System.currentTimeMillis() < nextRetry) {
+            return false;
+        }
+        if (!Utility.isNetworkAvailable(context)) {
+            Log.d(LOG_TAG, "Retry due but no network, waiting for connectivity");
+            return false;
+        }
+        prefs.edit().remove(PREF_NEXT_RETRY).commit();
+        SunshineSyncAdapter.syncImmediately(context);
+        return true;
+    }
+
+    /**
+     * @return the wall clock time the pending retry is due at, or -1 if there is none.
+     */
+    static long getNextRetryMillis(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getLong(PREF_NEXT_RETRY, -1);
+    }
+
+    /**
+     * @return true if the retry alarm is set.
+     */
+    static boolean isAlarmSet(Context context) {
+        return PendingIntent.getBroadcast(context, 0, getRetryIntent(context),
+                PendingIntent.FLAG_NO_CREATE) != null;
+    }
+
+    /**
+     * Forgets any pending retry and the recovery history.
+     */
+    static synchronized void reset(Context context) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(PREF_ATTEMPTS)
+                .remove(PREF_FIRST_FAILURE)
+                .remove(PREF_NEXT_RETRY)
+                .remove(PREF_RECOVERIES)
+                .remove(PREF_LAST_RECOVERY_ATTEMPTS)
+                .remove(PREF_LAST_RECOVERY_MILLIS)
+                .commit();
+        cancelAlarm(context);
+        setReceiverEnabled(context, false);
+    }
+
+    public static int getPendingAttempts(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getInt(PREF_ATTEMPTS, 0);
+    }
+
+    public static int getRecoveryCount(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getInt(PREF_RECOVERIES, 0);
+    }
+
+    public static int getLastRecoveryAttempts(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getInt(PREF_LAST_RECOVERY_ATTEMPTS, 0);
+    }
+
+    public static long getLastTimeToRecoverMillis(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_LAST_RECOVERY_MILLIS, 0);
+    }
+
+    private static Intent getRetryIntent(Context context) {
+        return new Intent(context, SyncRetryReceiver.class).setAction(ACTION_RETRY_SYNC);
+    }
+
+    private static void setAlarm(Context context, long delay) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + delay,
+                PendingIntent.getBroadcast(context, 0, getRetryIntent(context),
+                        PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    /**
+     * Cancels the alarm, and the intent with it so that {@link #isAlarmSet} sees it is gone.
+     * Package-private so tests can stand in for a reboot.
+     */
+    static void cancelAlarm(Context context) {
+        PendingIntent retryIntent = PendingIntent.getBroadcast(context, 0,
+                getRetryIntent(context), PendingIntent.FLAG_NO_CREATE);
+        if (retryIntent != null) {
+            AlarmManager alarmManager =
+                    (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(retryIntent);
+            retryIntent.cancel();
+        }
+    }
+
+    /**
+     * The receiver also listens for connectivity changes, so we only leave it enabled while
+     * a retry is pending.
+     */
+    private static void setReceiverEnabled(Context context, boolean enabled) {
+        context.getPackageManager().setComponentEnabledSetting(
+                new ComponentName(context, SyncRetryReceiver.class),
+                enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
+                        : PackageManager.COMPONENT_ENABLED_STATE_DISABLED,
+                PackageManager.DONT_KILL_APP);
+    }
+}
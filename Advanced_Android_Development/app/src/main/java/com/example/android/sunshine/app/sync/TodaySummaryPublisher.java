@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Computes "today's weather for the preferred location" once per data version and hands the
+ * same record to every consumer: the Today widgets, Muzei, the daily notification and the wear
+ * push.
+ *
+ * Each published summary carries a version stamp that only changes when the record itself
+ * changes, or the units it is shown in do, so consumers can remember the last version they
+ * rendered and skip redundant work.
+ */
+public class TodaySummaryPublisher {
+
+    public static final String CONSUMER_WIDGET = "widget";
+    public static final String CONSUMER_MUZEI = "muzei";
+    public static final String CONSUMER_WEAR = "wear";
+
+    private static final String PREF_VERSION = "today_summary_version";
+    private static final String PREF_RENDERED_PREFIX = "today_summary_rendered_";
+
+    private static final String[] TODAY_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+
+    private static TodaySummary sSummary;
+
+    /**
+     * Immutable snapshot of today's weather for one location.
+     */
+    public static final class TodaySummary {
+        public final long version;
+        public final String locationSetting;
+        // The normalized day this summary was computed for
+        public final long queryDay;
+        public final long date;
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+        // The units the temperatures are shown in when this summary was computed
+        public final boolean metric;
+
+        TodaySummary(long version, String locationSetting, long queryDay, long date,
+                     int weatherId, String description, double high, double low,
+                     boolean metric) {
+            this.version = version;
+            this.locationSetting = locationSetting;
+            this.queryDay = queryDay;
+            this.date = date;
+            this.weatherId = weatherId;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+            this.metric = metric;
+        }
+
+        TodaySummary withVersion(long newVersion) {
+            return new TodaySummary(newVersion, locationSetting, queryDay, date, weatherId,
+                    description, high, low, metric);
+        }
+
+        boolean sameWeatherAs(TodaySummary other) {
+            return other != null
+                    && locationSetting.equals(other.locationSetting)
+                    && date == other.date
+                    && weatherId == other.weatherId
+                    && description.equals(other.description)
+                    && high == other.high
+                    && low == other.low
+                    && metric == other.metric;
+        }
+    }
+
+    /**
+     * Recomputes today's summary from the provider.  The sync adapter calls this once after
+     * writing new data, before telling anybody else about it.
+     *
+     * @return the current summary, or null if there is no weather for today.
+     */
+    public static synchronized TodaySummary publish(Context context) {
+        TodaySummary computed = query(context, Utility.getPreferredLocation(context));
+        if (computed == null) {
+            sSummary = null;
+            return null;
+        }
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        long previousVersion = prefs.getLong(PREF_VERSION, 0);
+        long version = nextVersion(computed, sSummary, previousVersion);
+        if (version != previousVersion) {
+            prefs.edit().putLong(PREF_VERSION, version).apply();
+        }
+        sSummary = computed.withVersion(version);
+        return sSummary;
+    }
+
+    /**
+     * @return the version for a newly computed summary: the previous one's if nothing any
+     * consumer shows has changed, the next one otherwise.
+     */
+    static long nextVersion(TodaySummary computed, TodaySummary previous, long previousVersion) {
+        return computed.sameWeatherAs(previous) ? previousVersion : previousVersion + 1;
+    }
+
+    /**
+     * @return the current summary, only going to the provider if the one we have is for another
+     * location or day.  Null if there is no weather for today.
+     */
+    public static synchronized TodaySummary get(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        if (sSummary != null && sSummary.queryDay == today
+                && sSummary.locationSetting.equals(locationSetting)
+                && sSummary.metric == Utility.isMetric(context)) {
+            return sSummary;
+        }
+        return publish(context);
+    }
+
+    /**
+     * @return true if the given consumer has already rendered this version of the summary.
+     */
+    public static boolean hasRendered(Context context, String consumer, TodaySummary summary) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getLong(PREF_RENDERED_PREFIX + consumer, -1) == summary.version;
+    }
+
+    public static void markRendered(Context context, String consumer, TodaySummary summary) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(PREF_RENDERED_PREFIX + consumer, summary.version)
+                .apply();
+    }
+
+    private static TodaySummary query(Context context, String locationSetting) {
+        long now = System.currentTimeMillis();
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, now);
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri, TODAY_COLUMNS,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new TodaySummary(0, locationSetting, WeatherContract.normalizeDate(now),
+                    cursor.getLong(INDEX_DATE),
+                    cursor.getInt(INDEX_WEATHER_ID),
+                    cursor.getString(INDEX_SHORT_DESC),
+                    cursor.getDouble(INDEX_MAX_TEMP),
+                    cursor.getDouble(INDEX_MIN_TEMP),
+                    Utility.isMetric(context));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -7,25 +7,22 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
-    public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
             WeatherContract.WeatherEntry.COLUMN_DATE,
@@ -46,10 +43,13 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private WidgetArtworkCache artworkCache;
+            private int iconSize;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                artworkCache = WidgetArtworkCache.getInstance(DetailWidgetRemoteViewsService.this);
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
             }
 
             @Override
@@ -71,6 +71,25 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                preloadArtwork();
+            }
+
+            /**
+             * Decodes the artwork for every distinct condition in the new data up front, so that
+             * getViewAt only ever reads from memory.
+             */
+            private void preloadArtwork() {
+                if (data == null
+                        || Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    return;
+                }
+                Set<String> artUrls = new LinkedHashSet<>();
+                for (int i = 0; data.moveToPosition(i); i++) {
+                    artUrls.add(Utility.getArtUrlForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this,
+                            data.getInt(INDEX_WEATHER_CONDITION_ID)));
+                }
+                artworkCache.preload(artUrls, iconSize, iconSize);
             }
 
             @Override
@@ -100,15 +119,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
                     String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
+                    // Anything missing here failed to load in preloadArtwork, so we just fall
+                    // back to the local icon rather than trying the network again.
+                    weatherArtImage = artworkCache.get(weatherArtResourceUrl, iconSize, iconSize);
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
@@ -21,34 +21,41 @@ import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.TodaySummaryPublisher;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    private static final String LOG_TAG = TodayWidgetIntentService.class.getSimpleName();
+
+    private static final int[] LAYOUT_BUCKETS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
     };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+
+    // One RemoteViews per layout bucket, valid for a single summary version and unit setting.
+    // Only touched from onHandleIntent, which runs on the single IntentService worker thread.
+    private static final SparseArray<RemoteViews> sTemplates =
+            new SparseArray<>(LAYOUT_BUCKETS.length);
+    private static long sTemplateVersion = -1;
+    private static boolean sTemplateMetric;
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -61,36 +68,30 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
+        // Get today's data, shared with the other consumers of the same data update
+        TodaySummaryPublisher.TodaySummary summary = TodaySummaryPublisher.get(this);
+        if (summary == null) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
+
+        // A data update that didn't change today's weather leaves the widgets as they are.
+        // Other updates (new widgets, resizes) always render.
+        boolean dataUpdated = intent != null &&
+                SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction());
+        if (dataUpdated && TodaySummaryPublisher.hasRendered(this,
+                TodaySummaryPublisher.CONSUMER_WIDGET, summary)) {
             return;
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
-
-        // Perform this loop procedure for each Today widget
+        long startNanos = System.nanoTime();
+        boolean isMetric = Utility.isMetric(this);
+
+        // Sort the widgets into their layout buckets based on each widget's width
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<List<Integer>> widgetIdsByLayout = new SparseArray<>(LAYOUT_BUCKETS.length);
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
             int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,26 +100,69 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            List<Integer> bucket = widgetIdsByLayout.get(layoutId);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                widgetIdsByLayout.put(layoutId, bucket);
+            }
+            bucket.add(appWidgetId);
+        }
 
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+        // Any templates we built for an older summary (or other units) are stale
+        if (sTemplateVersion != summary.version || sTemplateMetric != isMetric) {
+            sTemplates.clear();
+            sTemplateVersion = summary.version;
+            sTemplateMetric = isMetric;
+        }
+
+        // Build (or reuse) one RemoteViews per layout, and send it to every widget in the bucket
+        int builtCount = 0;
+        for (int i = 0; i < widgetIdsByLayout.size(); i++) {
+            int layoutId = widgetIdsByLayout.keyAt(i);
+            RemoteViews views = sTemplates.get(layoutId);
+            if (views == null) {
+                views = buildRemoteViews(layoutId, summary);
+                sTemplates.put(layoutId, views);
+                builtCount++;
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+            List<Integer> bucket = widgetIdsByLayout.valueAt(i);
+            int[] bucketIds = new int[bucket.size()];
+            for (int j = 0; j < bucketIds.length; j++) {
+                bucketIds[j] = bucket.get(j);
+            }
+            // Tell the AppWidgetManager to update every widget in this bucket at once
+            appWidgetManager.updateAppWidget(bucketIds, views);
+        }
+        TodaySummaryPublisher.markRendered(this, TodaySummaryPublisher.CONSUMER_WIDGET, summary);
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        long elapsedMicros = (System.nanoTime() - startNanos) / 1000;
+        Log.d(LOG_TAG, "Updated " + appWidgetIds.length + " widgets in "
+                + widgetIdsByLayout.size() + " buckets (" + builtCount + " built) in "
+                + elapsedMicros + "us");
+    }
+
+    private RemoteViews buildRemoteViews(int layoutId, TodaySummaryPublisher.TodaySummary summary) {
+        RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+        // Add the data to the RemoteViews
+        String description = summary.description;
+        views.setImageViewResource(R.id.widget_icon,
+                Utility.getArtResourceForWeatherCondition(summary.weatherId));
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
         }
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature,
+                Utility.formatTemperature(this, summary.high));
+        views.setTextViewText(R.id.widget_low_temperature,
+                Utility.formatTemperature(this, summary.low));
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded cache of weather artwork decoded at widget icon size.
+ *
+ * Every bitmap handed to a RemoteViews is parceled across to the launcher, so we decode each
+ * condition image once at the size the widget shows it and share the result between all rows
+ * and all {@link android.widget.RemoteViewsService.RemoteViewsFactory} instances.
+ */
+class WidgetArtworkCache {
+    private static final String LOG_TAG = WidgetArtworkCache.class.getSimpleName();
+
+    // Widget icons are small; a full art pack at list icon size is well under this.
+    private static final int MAX_CACHE_BYTES = 1024 * 1024;
+
+    private static WidgetArtworkCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mCache;
+
+    static synchronized WidgetArtworkCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WidgetArtworkCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WidgetArtworkCache(Context context) {
+        mContext = context;
+        mCache = new LruCache<String, Bitmap>(MAX_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+    }
+
+    private static String buildKey(String url, int width, int height) {
+        return url + '@' + width + 'x' + height;
+    }
+
+    /**
+     * @return the decoded artwork for this url, or null if it hasn't been preloaded.  Never
+     * touches the network.
+     */
+    Bitmap get(String url, int width, int height) {
+        if (url == null) {
+            return null;
+        }
+        return mCache.get(buildKey(url, width, height));
+    }
+
+    /**
+     * Decodes every url that isn't already cached.  All of the requests are started before we
+     * wait on any of them, so the fetches run in parallel rather than one after the other.
+     *
+     * This blocks, so it must not be called from the main thread.
+     */
+    void preload(Collection<String> urls, int width, int height) {
+        Map<String, FutureTarget<Bitmap>> requests = new HashMap<>();
+        for (String url : urls) {
+            if (url == null) {
+                continue;
+            }
+            String key = buildKey(url, width, height);
+            if (mCache.get(key) == null && !requests.containsKey(key)) {
+                requests.put(key, Glide.with(mContext)
+                        .load(url)
+                        .asBitmap()
+                        .fitCenter()
+                        .into(width, height));
+            }
+        }
+        for (Map.Entry<String, FutureTarget<Bitmap>> request : requests.entrySet()) {
+            try {
+                Bitmap bitmap = request.getValue().get();
+                if (bitmap != null) {
+                    // Glide takes the bitmap back for its pool once the request is cleared, so
+                    // keep a copy of our own
+                    Bitmap.Config config = bitmap.getConfig() != null
+                            ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+                    mCache.put(request.getKey(), bitmap.copy(config, false));
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving widget artwork " + request.getKey(), e);
+            } finally {
+                Glide.clear(request.getValue());
+            }
+        }
+        Log.d(LOG_TAG, "Preloaded " + requests.size() + " of " + urls.size()
+                + " widget images, cache hits=" + mCache.hitCount()
+                + " misses=" + mCache.missCount());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import com.example.android.sunshine.app.WeatherFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+
+/**
+ * Throughput and allocation of the formatting done for every forecast row, widget row and
+ * notification.  The formatters get the same strings as the English resources.
+ */
+@State(Scope.Thread)
+public class WeatherFormatterBenchmark {
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+
+    private WeatherFormatter mMetric;
+    private WeatherFormatter mImperial;
+
+    private long mNow;
+    private long mTomorrow;
+    private long mInThreeDays;
+    private long mInTwoWeeks;
+
+    @Setup
+    public void setUp() {
+        mMetric = createFormatter(true);
+        mImperial = createFormatter(false);
+        mNow = System.currentTimeMillis();
+        mTomorrow = mNow + DAY_IN_MILLIS;
+        mInThreeDays = mNow + 3 * DAY_IN_MILLIS;
+        mInTwoWeeks = mNow + 14 * DAY_IN_MILLIS;
+    }
+
+    private static WeatherFormatter createFormatter(boolean metric) {
+        String[] conditionNames = new String[WeatherFormatter.CONDITION_IDS.length];
+        for (int i = 0; i < conditionNames.length; i++) {
+            conditionNames[i] = "Condition " + WeatherFormatter.CONDITION_IDS[i];
+        }
+        return new WeatherFormatter(Locale.US, metric, "%1.0f\u00B0",
+                metric ? "%1$1.0f km/h %2$s" : "%1$1.0f mph %2$s",
+                "Today", "Tomorrow", "%1$s, %2$s", "Storm", "Drizzle", "Unknown (%1$s)",
+                conditionNames);
+    }
+
+    @Benchmark
+    public String formatTemperatureMetric() {
+        return mMetric.formatTemperature(21.4);
+    }
+
+    @Benchmark
+    public String formatTemperatureImperial() {
+        return mImperial.formatTemperature(21.4);
+    }
+
+    @Benchmark
+    public String formatWind() {
+        return mMetric.formatWind(12.3f, 290f);
+    }
+
+    @Benchmark
+    public String getFriendlyDayStringToday() {
+        return mMetric.getFriendlyDayString(mNow, mNow, true);
+    }
+
+    @Benchmark
+    public String getFriendlyDayStringTomorrow() {
+        return mMetric.getFriendlyDayString(mTomorrow, mNow, false);
+    }
+
+    @Benchmark
+    public String getFriendlyDayStringThisWeek() {
+        return mMetric.getFriendlyDayString(mInThreeDays, mNow, false);
+    }
+
+    @Benchmark
+    public String getFriendlyDayStringLater() {
+        return mMetric.getFriendlyDayString(mInTwoWeeks, mNow, false);
+    }
+
+    @Benchmark
+    public String getConditionDescription() {
+        return mMetric.getConditionDescription(802);
+    }
+
+    @Benchmark
+    public String getConditionDescriptionStorm() {
+        return mMetric.getConditionDescription(211);
+    }
+
+    @Benchmark
+    public String getConditionDescriptionUnknown() {
+        return mMetric.getConditionDescription(999);
+    }
+}
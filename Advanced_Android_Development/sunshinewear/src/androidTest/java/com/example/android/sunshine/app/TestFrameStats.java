@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.InstrumentationTestCase;
+
+public class TestFrameStats extends InstrumentationTestCase {
+
+    public void testSnapshotBeforeWrapping() {
+        FrameStats frameStats = new FrameStats();
+        assertEquals("Error: New stats should hold no frames", 0, frameStats.snapshot().size());
+
+        frameStats.record(1000, 5000, 3, 0, 4096, false);
+        frameStats.record(2000, 6000, 1200, 1, 4096, false);
+        frameStats.record(60000, 7000, FrameStats.NO_TICK, 0, 8192, true);
+
+        FrameStats.Snapshot snapshot = frameStats.snapshot();
+        assertEquals(3, snapshot.size());
+        assertEquals(3, snapshot.frameCount);
+        assertEquals(1, snapshot.missedTickCount);
+        assertEquals(1000, snapshot.times[0]);
+        assertEquals(6000, snapshot.drawNanos[1]);
+        assertEquals(1200, snapshot.tickDriftMillis[1]);
+        assertEquals(1, snapshot.missedTicks[1]);
+        assertEquals(FrameStats.NO_TICK, snapshot.tickDriftMillis[2]);
+        assertEquals(8192, snapshot.bitmapBytes[2]);
+        assertTrue(snapshot.ambient[2]);
+    }
+
+    public void testSnapshotKeepsNewestFrames() {
+        FrameStats frameStats = new FrameStats();
+        int frames = FrameStats.CAPACITY + 10;
+        for (int i = 0; i < frames; i++) {
+            frameStats.record(i, i, 0, 1, 0, false);
+        }
+
+        FrameStats.Snapshot snapshot = frameStats.snapshot();
+        assertEquals("Error: Snapshot should hold only the newest frames",
+                FrameStats.CAPACITY, snapshot.size());
+        assertEquals(frames, snapshot.frameCount);
+        assertEquals(frames, snapshot.missedTickCount);
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertEquals("Error: Frames should be oldest first", 10 + i, snapshot.times[i]);
+        }
+    }
+}
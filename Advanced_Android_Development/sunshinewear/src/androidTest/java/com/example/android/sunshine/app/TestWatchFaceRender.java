@@ -0,0 +1,545 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Draws the watch face into an offscreen bitmap for a scripted run of times, weather and mode
+    switches, and reports how long each frame took and how much it allocated against the 16ms
+    frame budget.  Each mode is drawn three ways: everything as text every frame, with the static
+    layer, and with the static layer and the time drawn from the digit atlas.  The report is
+    logged and written to watchface_render.json in the external files directory.
+
+    It also draws one frame for each mode and screen shape into watchface/<mode>_<shape>.png next
+    to the report, and each has to match the golden image of the same name under
+    src/androidTest/assets/goldens.  Frames without a golden are reported and skipped until
+    their goldens are recorded.  Goldens depend on the fonts
+    and density of the device they were drawn on, so record them by pulling the PNGs from the
+    reference emulator, as described in the README there.
+ */
+public class TestWatchFaceRender extends InstrumentationTestCase {
+    public static final String LOG_TAG = TestWatchFaceRender.class.getSimpleName();
+
+    static final String RESULTS_FILE_NAME = "watchface_render.json";
+    static final String FRAMES_DIR_NAME = "watchface";
+    static final String GOLDENS_ASSET_DIR = "goldens";
+
+    private static final long FRAME_BUDGET_NANOS = 16 * 1000 * 1000;
+    private static final int SURFACE_SIZE = 320;
+    private static final int WARMUP_FRAMES = 30;
+    private static final int FRAMES = 600;
+    // The weather changes this often during a run
+    private static final int FRAMES_PER_WEATHER = 60;
+    // Mode switches flip between interactive and ambient this often
+    private static final int FRAMES_PER_MODE_SWITCH = 20;
+
+    // 10:09:30 UTC, the time the frames for the golden images are drawn at
+    private static final long START_MILLIS = 1445249370000L;
+    private static final int[] WEATHER_IDS = {800, 801, 803, 500, 511, 601, 741, 211, 311, 781};
+    // Channels may differ by this much, and this share of pixels may differ at all
+    private static final int GOLDEN_CHANNEL_TOLERANCE = 2;
+    private static final float GOLDEN_PIXEL_TOLERANCE = 0.001f;
+
+    /**
+     * What the system tells the engine about the display, and how the engine draws on it.
+     */
+    private static final class Mode {
+        final String mName;
+        final boolean mAmbient;
+        final boolean mLowBitAmbient;
+        final boolean mBurnInProtection;
+        final boolean mSwitching;
+
+        Mode(String name, boolean ambient, boolean lowBitAmbient, boolean burnInProtection,
+             boolean switching) {
+            mName = name;
+            mAmbient = ambient;
+            mLowBitAmbient = lowBitAmbient;
+            mBurnInProtection = burnInProtection;
+            mSwitching = switching;
+        }
+    }
+
+    private static final Mode[] MODES = {
+            new Mode("interactive", false, false, false, false),
+            new Mode("ambient", true, false, false, false),
+            new Mode("ambient_low_bit", true, true, false, false),
+            new Mode("ambient_burn_in", true, false, true, false),
+            new Mode("mode_switches", false, false, false, true)
+    };
+
+    /**
+     * A way of drawing the face, from the plainest to the one the watch face uses.
+     */
+    private static final class Variant {
+        final String mName;
+        final boolean mLayered;
+        final boolean mDigitAtlas;
+
+        Variant(String name, boolean layered, boolean digitAtlas) {
+            mName = name;
+            mLayered = layered;
+            mDigitAtlas = digitAtlas;
+        }
+    }
+
+    private static final String[] SHAPES = {"square", "round"};
+
+    private static final Variant[] VARIANTS = {
+            new Variant("text", false, false),
+            new Variant("layered_text", true, false),
+            new Variant("layered_digit_atlas", true, true)
+    };
+
+    private Context mTargetContext;
+    private File mOutputDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTargetContext = getInstrumentation().getTargetContext();
+        mOutputDir = mTargetContext.getExternalFilesDir(null);
+        if (mOutputDir == null) {
+            // No external storage mounted
+            mOutputDir = mTargetContext.getFilesDir();
+        }
+    }
+
+    private WatchFaceRenderer createRenderer(Mode mode, Variant variant) {
+        return createRenderer(mode, variant, false);
+    }
+
+    private WatchFaceRenderer createRenderer(Mode mode, Variant variant, boolean round) {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mTargetContext.getResources());
+        renderer.setLayered(variant.mLayered);
+        renderer.setUseDigitAtlas(variant.mDigitAtlas);
+        renderer.setTimeZone("UTC");
+        renderer.setRound(round);
+        renderer.setDisplayProperties(mode.mLowBitAmbient, mode.mBurnInProtection);
+        renderer.setSurfaceSize(SURFACE_SIZE, SURFACE_SIZE);
+        renderer.setAmbient(mode.mAmbient);
+        return renderer;
+    }
+
+    public void testBenchmarkRender() throws JSONException, IOException {
+        JSONObject results = new JSONObject();
+        results.put("device", Build.MODEL);
+        results.put("sdkInt", Build.VERSION.SDK_INT);
+        results.put("timestamp", System.currentTimeMillis());
+        results.put("frameBudgetMicros", FRAME_BUDGET_NANOS / 1000);
+
+        JSONArray modes = new JSONArray();
+        for (Mode mode : MODES) {
+            StringBuilder medians = new StringBuilder(mode.mName).append(" median frame:");
+            for (Variant variant : VARIANTS) {
+                JSONObject result = runMode(mode, variant);
+                modes.put(result);
+                medians.append(' ').append(variant.mName).append(' ')
+                        .append(result.getLong("medianMicros")).append("us");
+            }
+            Log.d(LOG_TAG, medians.toString());
+        }
+        results.put("modes", modes);
+
+        File file = new File(mOutputDir, RESULTS_FILE_NAME);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(results.toString(2));
+        } finally {
+            writer.close();
+        }
+        Log.d(LOG_TAG, "Results written to " + file.getAbsolutePath());
+    }
+
+    private JSONObject runMode(Mode mode, Variant variant) throws JSONException {
+        WatchFaceRenderer renderer = createRenderer(mode, variant);
+        Bitmap bitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Rect bounds = new Rect(0, 0, SURFACE_SIZE, SURFACE_SIZE);
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            drawFrame(renderer, mode, canvas, bounds, i);
+        }
+
+        AmbientRenderer ambientRenderer = renderer.getAmbientRenderer();
+        ambientRenderer.resetCounters();
+        int ambientFrames = 0;
+        long[] nanos = new long[FRAMES];
+        int overBudget = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            drawFrame(renderer, mode, canvas, bounds, i);
+            nanos[i] = SystemClock.elapsedRealtimeNanos() - start;
+            if (nanos[i] > FRAME_BUDGET_NANOS) {
+                overBudget++;
+            }
+            if (isAmbient(mode, i)) {
+                ambientFrames++;
+            }
+        }
+        int ambientDraws = ambientRenderer.getDrawCount();
+        int ambientBlits = ambientRenderer.getFullScreenBlitCount();
+        int ambientFrameDraws = ambientRenderer.getFrameDrawCount();
+
+        // Counting allocations slows everything down, so it gets a run of its own
+        long[] allocations = new long[FRAMES];
+        startAllocCounting();
+        try {
+            for (int i = 0; i < FRAMES; i++) {
+                allocations[i] = countAllocations(renderer, mode, canvas, bounds, i);
+            }
+        } finally {
+            stopAllocCounting();
+        }
+
+        Arrays.sort(nanos);
+        Arrays.sort(allocations);
+        long totalAllocations = 0;
+        for (long count : allocations) {
+            totalAllocations += count;
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("mode", mode.mName);
+        result.put("variant", variant.mName);
+        result.put("frames", FRAMES);
+        result.put("medianMicros", nanos[FRAMES / 2] / 1000);
+        result.put("p90Micros", nanos[FRAMES * 90 / 100] / 1000);
+        result.put("p99Micros", nanos[FRAMES * 99 / 100] / 1000);
+        result.put("maxMicros", nanos[FRAMES - 1] / 1000);
+        result.put("framesOverBudget", overBudget);
+        result.put("meanAllocationsPerFrame", (double) totalAllocations / FRAMES);
+        result.put("maxAllocationsPerFrame", allocations[FRAMES - 1]);
+        if (ambientFrames > 0) {
+            // Each ambient frame is a minute on the watch
+            result.put("ambientDrawsPerHour", ambientDraws * 60f / ambientFrames);
+            result.put("ambientFullScreenBlitsPerHour", ambientBlits * 60f / ambientFrames);
+            result.put("ambientFrameDrawsPerHour", ambientFrameDraws * 60f / ambientFrames);
+        }
+        Log.d(LOG_TAG, result.toString());
+
+        assertTrue("Error: " + mode.mName + " frames took " + nanos[FRAMES / 2] / 1000
+                        + "us, more than the " + FRAME_BUDGET_NANOS / 1000 + "us budget",
+                nanos[FRAMES / 2] < FRAME_BUDGET_NANOS);
+        return result;
+    }
+
+    /**
+     * Draws the given frame of the script: the clock moves on a second a frame while interactive
+     * and a minute a frame in ambient, as it does on the watch, and the weather and, when the mode
+     * switches, ambient mode change every so often.
+     */
+    private static void drawFrame(WatchFaceRenderer renderer, Mode mode, Canvas canvas,
+                                  Rect bounds, int frame) {
+        boolean ambient = isAmbient(mode, frame);
+        if (mode.mSwitching) {
+            renderer.setAmbient(ambient);
+        }
+        if (frame % FRAMES_PER_WEATHER == 0) {
+            int weatherId = WEATHER_IDS[(frame / FRAMES_PER_WEATHER) % WEATHER_IDS.length];
+            renderer.setWeather("Mon, Oct 19 2015", "21\u00B0", "11\u00B0", weatherId);
+        }
+        long time = START_MILLIS + frame * (ambient ? 60000L : 1000L);
+        renderer.draw(canvas, bounds, time);
+    }
+
+    private static boolean isAmbient(Mode mode, int frame) {
+        if (mode.mSwitching) {
+            return (frame / FRAMES_PER_MODE_SWITCH) % 2 == 1;
+        }
+        return mode.mAmbient;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void startAllocCounting() {
+        Debug.startAllocCounting();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void stopAllocCounting() {
+        Debug.stopAllocCounting();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long countAllocations(WatchFaceRenderer renderer, Mode mode, Canvas canvas,
+                                         Rect bounds, int frame) {
+        Debug.resetThreadAllocCount();
+        drawFrame(renderer, mode, canvas, bounds, frame);
+        return Debug.getThreadAllocCount();
+    }
+
+    public void testGoldenImages() throws IOException {
+        File dir = new File(mOutputDir, FRAMES_DIR_NAME);
+        assertTrue("Error: couldn't create " + dir, dir.isDirectory() || dir.mkdirs());
+
+        // Every frame is written out before any is compared, so a failing run still leaves a
+        // full set to record goldens from
+        List<String> missing = new ArrayList<>();
+        List<String> mismatched = new ArrayList<>();
+        for (Mode mode : MODES) {
+            for (String shape : SHAPES) {
+                WatchFaceRenderer renderer = createRenderer(mode, VARIANTS[VARIANTS.length - 1],
+                        shape.equals("round"));
+                Bitmap bitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE,
+                        Bitmap.Config.ARGB_8888);
+                drawFrame(renderer, mode, new Canvas(bitmap),
+                        new Rect(0, 0, SURFACE_SIZE, SURFACE_SIZE), 0);
+
+                String fileName = mode.mName + "_" + shape + ".png";
+                OutputStream out = new FileOutputStream(new File(dir, fileName));
+                try {
+                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+                } finally {
+                    out.close();
+                }
+
+                Bitmap golden = loadGolden(fileName);
+                if (golden == null) {
+                    missing.add(fileName);
+                    continue;
+                }
+                int pixels = bitmap.getWidth() * bitmap.getHeight();
+                // A golden of another size differs everywhere
+                int differing = pixels;
+                if (golden.getWidth() == bitmap.getWidth()
+                        && golden.getHeight() == bitmap.getHeight()) {
+                    differing = countDifferingPixels(golden, bitmap);
+                }
+                if (differing > GOLDEN_PIXEL_TOLERANCE * pixels) {
+                    Log.d(LOG_TAG, differing + " pixels of " + fileName
+                            + " differ from the golden image");
+                    mismatched.add(fileName);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            // Not a failure: goldens can only be recorded on the reference emulator
+            Log.w(LOG_TAG, "Skipped " + missing.size() + " frames with no golden image: "
+                    + missing + ".  Record them from " + dir.getAbsolutePath());
+        }
+        assertTrue("Error: " + mismatched + " differ from their golden images",
+                mismatched.isEmpty());
+    }
+
+    /*
+        The static layer is only worth having if it looks exactly the same.  Draws a run of
+        frames both ways, across weather changes and, for the mode switches, ambient changes.
+        Burn-in protection moves the layered face around on purpose, so it is left out.
+     */
+    public void testLayeredMatchesDirect() {
+        Rect bounds = new Rect(0, 0, SURFACE_SIZE, SURFACE_SIZE);
+        for (Mode mode : MODES) {
+            if (mode.mBurnInProtection) {
+                continue;
+            }
+            WatchFaceRenderer direct = createRenderer(mode, new Variant("direct", false, true));
+            WatchFaceRenderer layered = createRenderer(mode, new Variant("layered", true, true));
+            Bitmap directBitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE,
+                    Bitmap.Config.ARGB_8888);
+            Bitmap layeredBitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE,
+                    Bitmap.Config.ARGB_8888);
+            Canvas directCanvas = new Canvas(directBitmap);
+            Canvas layeredCanvas = new Canvas(layeredBitmap);
+            for (int frame = 0; frame < FRAMES_PER_WEATHER * 3; frame++) {
+                // The direct frame draws over whatever was there, as on a real surface
+                directBitmap.eraseColor(Color.BLACK);
+                drawFrame(direct, mode, directCanvas, bounds, frame);
+                drawFrame(layered, mode, layeredCanvas, bounds, frame);
+                assertEquals("Error: frame " + frame + " of " + mode.mName
+                                + " is different with the static layer",
+                        0, countDifferingPixels(directBitmap, layeredBitmap));
+            }
+        }
+    }
+
+    /*
+        Going in and out of ambient mode with nothing else changing keeps the ambient frame.
+     */
+    public void testModeSwitchKeepsAmbientFrame() {
+        WatchFaceRenderer renderer = createRenderer(MODES[0], VARIANTS[VARIANTS.length - 1]);
+        renderer.setWeather("Mon, Oct 19 2015", "21\u00B0", "11\u00B0", WEATHER_IDS[0]);
+        Bitmap bitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Rect bounds = new Rect(0, 0, SURFACE_SIZE, SURFACE_SIZE);
+        // Interactive, ambient, interactive, ambient, a minute apart
+        for (int minute = 0; minute < 4; minute++) {
+            renderer.setAmbient(minute % 2 == 1);
+            renderer.draw(canvas, bounds, START_MILLIS + minute * 60000L);
+        }
+        assertEquals("Error: the ambient frame was drawn again after a mode switch",
+                1, renderer.getAmbientRenderer().getFrameDrawCount());
+    }
+
+    /*
+        A new time zone changes the time shown, so the next ambient tick has to draw even
+        within the same minute.
+     */
+    public void testTimeZoneChangeRedrawsAmbient() {
+        Mode mode = MODES[1];
+        WatchFaceRenderer renderer = createRenderer(mode, VARIANTS[VARIANTS.length - 1]);
+        Bitmap bitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        drawFrame(renderer, mode, new Canvas(bitmap),
+                new Rect(0, 0, SURFACE_SIZE, SURFACE_SIZE), 0);
+        assertTrue(renderer.isAmbientFrameCurrent(START_MILLIS));
+
+        renderer.setTimeZone("Asia/Tokyo");
+        assertFalse("Error: the old time would stay up after the time zone changed",
+                renderer.isAmbientFrameCurrent(START_MILLIS));
+    }
+
+    /*
+        With burn-in protection the face moves a little every minute, and never far.
+     */
+    public void testBurnInShift() {
+        Mode mode = new Mode("ambient_burn_in", true, false, true, false);
+        WatchFaceRenderer renderer = createRenderer(mode, VARIANTS[VARIANTS.length - 1]);
+        int shift = mTargetContext.getResources().getDimensionPixelOffset(R.dimen.burn_in_shift);
+        Bitmap bitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Rect bounds = new Rect(0, 0, SURFACE_SIZE, SURFACE_SIZE);
+
+        int minLeft = Integer.MAX_VALUE;
+        int maxLeft = Integer.MIN_VALUE;
+        int minTop = Integer.MAX_VALUE;
+        int maxTop = Integer.MIN_VALUE;
+        Rect lit = new Rect();
+        // Stays within the same hour, so the leftmost and topmost lit pixels only move with the
+        // shift
+        for (int minute = 0; minute < 9; minute++) {
+            drawFrame(renderer, mode, canvas, bounds, minute);
+            assertTrue("Error: nothing was drawn", getLitBounds(bitmap, lit));
+            minLeft = Math.min(minLeft, lit.left);
+            maxLeft = Math.max(maxLeft, lit.left);
+            minTop = Math.min(minTop, lit.top);
+            maxTop = Math.max(maxTop, lit.top);
+        }
+        assertTrue("Error: the face didn't move", maxLeft > minLeft && maxTop > minTop);
+        assertTrue("Error: the face moved too far",
+                maxLeft - minLeft <= 2 * shift && maxTop - minTop <= 2 * shift);
+    }
+
+    /**
+     * @return false if every pixel is black.
+     */
+    private static boolean getLitBounds(Bitmap bitmap, Rect out) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        int left = width;
+        int top = height;
+        int right = -1;
+        int bottom = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[y * width + x] & 0xffffff) != 0) {
+                    left = Math.min(left, x);
+                    top = Math.min(top, y);
+                    right = Math.max(right, x);
+                    bottom = Math.max(bottom, y);
+                }
+            }
+        }
+        out.set(left, top, right + 1, bottom + 1);
+        return right >= 0;
+    }
+
+    /*
+        The glyphs are placed by their advances, so the time should take up as much room as the
+        same text drawn by the font engine.
+     */
+    public void testDigitAtlasKeepsTextWidth() {
+        Paint paint = new Paint();
+        paint.setTextSize(mTargetContext.getResources().getDimension(
+                R.dimen.digital_text_size_round));
+        paint.setAntiAlias(true);
+        Bitmap bitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        DigitAtlas atlas = new DigitAtlas(paint);
+        assertTrue(atlas.matches(paint));
+        String text = "12:34:56";
+        float end = atlas.draw(canvas, text.toCharArray(), text.length(), 10, 100, paint);
+        assertEquals(paint.measureText(text), end - 10, 1f);
+
+        paint.setAntiAlias(false);
+        assertFalse("Error: the atlas was drawn with anti-aliasing", atlas.matches(paint));
+    }
+
+    private Bitmap loadGolden(String fileName) throws IOException {
+        InputStream in;
+        try {
+            // Goldens ship in the test APK
+            in = getInstrumentation().getContext().getAssets()
+                    .open(GOLDENS_ASSET_DIR + "/" + fileName);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            return BitmapFactory.decodeStream(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int countDifferingPixels(Bitmap expected, Bitmap actual) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        int[] expectedPixels = new int[width * height];
+        int[] actualPixels = new int[width * height];
+        expected.getPixels(expectedPixels, 0, width, 0, 0, width, height);
+        actual.getPixels(actualPixels, 0, width, 0, 0, width, height);
+        int differing = 0;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            int e = expectedPixels[i];
+            int a = actualPixels[i];
+            if (Math.abs(Color.alpha(e) - Color.alpha(a)) > GOLDEN_CHANNEL_TOLERANCE
+                    || Math.abs(Color.red(e) - Color.red(a)) > GOLDEN_CHANNEL_TOLERANCE
+                    || Math.abs(Color.green(e) - Color.green(a)) > GOLDEN_CHANNEL_TOLERANCE
+                    || Math.abs(Color.blue(e) - Color.blue(a)) > GOLDEN_CHANNEL_TOLERANCE) {
+                differing++;
+            }
+        }
+        return differing;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.android.gms.wearable.DataMap;
+
+public class TestWeatherSnapshot extends InstrumentationTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        WeatherSnapshot.publish(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        WeatherSnapshot.publish(null);
+        super.tearDown();
+    }
+
+    private static WeatherSnapshot createSnapshot(long version) {
+        return new WeatherSnapshot("Mon, Oct 19 2015", "21\u00B0", "11\u00B0", 800, version);
+    }
+
+    public void testFromDataMapReadsVersion() {
+        DataMap dataMap = new DataMap();
+        dataMap.putString("date", "Mon, Oct 19 2015");
+        dataMap.putString("high", "21\u00B0");
+        dataMap.putString("low", "11\u00B0");
+        dataMap.putInt("conditionId", 800);
+        dataMap.putLong("version", 7);
+        assertEquals(7, WeatherSnapshot.fromDataMap(dataMap).version);
+    }
+
+    /*
+        Two deliveries from the phone can race, so an older one finishing last must not replace
+        the newer weather.
+     */
+    public void testOlderWeatherIsDropped() {
+        WeatherSnapshot newer = createSnapshot(5);
+        assertTrue(WeatherSnapshot.publish(newer));
+        assertFalse("Error: older weather was published",
+                WeatherSnapshot.publish(createSnapshot(4)));
+        assertSame(newer, WeatherSnapshot.getLatest());
+
+        WeatherSnapshot same = createSnapshot(5);
+        assertTrue("Error: weather of the same version should replace the last",
+                WeatherSnapshot.publish(same));
+        assertSame(same, WeatherSnapshot.getLatest());
+    }
+
+    public void testDeletionClearsWeather() {
+        assertTrue(WeatherSnapshot.publish(createSnapshot(5)));
+        assertTrue(WeatherSnapshot.publish(null));
+        assertNull(WeatherSnapshot.getLatest());
+        assertTrue("Error: weather after a deletion should be published",
+                WeatherSnapshot.publish(createSnapshot(1)));
+    }
+}
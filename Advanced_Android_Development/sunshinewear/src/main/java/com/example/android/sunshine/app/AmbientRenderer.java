@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the watch face in ambient mode, where it changes once a minute and every frame costs
+ * battery.
+ *
+ * With a full color ambient display, everything but the time is kept in a frame that is only
+ * drawn again when it changes, so a minute costs one copy of that frame and the digits.  With a
+ * low-bit or burn-in protected display the face is black with a few lines of text, which is
+ * cheaper to draw than to copy, and with burn-in protection it is moved by a few pixels every
+ * minute so that no pixel stays lit for long.
+ */
+class AmbientRenderer {
+    public static final String LOG_TAG = AmbientRenderer.class.getSimpleName();
+
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // The directions the face is moved in for burn-in protection, one a minute
+    private static final int[][] BURN_IN_OFFSETS = {
+            {0, 0}, {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}
+    };
+
+    /**
+     * The parts of the face, drawn by the renderer that owns this one.
+     */
+    interface Content {
+        void drawBackground(Canvas canvas);
+
+        void drawWeather(Canvas canvas);
+
+        void drawTime(Canvas canvas, long timeMillis);
+    }
+
+    private final Content mContent;
+    private final int mBurnInShift;
+
+    private boolean mLowBitAmbient;
+    private boolean mBurnInProtection;
+
+    private Bitmap mFrame;
+    private Canvas mFrameCanvas;
+    private boolean mFrameValid;
+    // The minute last drawn, or -1 if something changed since
+    private long mDrawnMinute = -1;
+
+    private long mCountingSince = SystemClock.elapsedRealtime();
+    private int mDrawCount;
+    private int mFullScreenBlitCount;
+    private int mFrameDrawCount;
+
+    /**
+     * @param burnInShift how far to move the face for burn-in protection, in pixels
+     */
+    AmbientRenderer(Content content, int burnInShift) {
+        mContent = content;
+        mBurnInShift = burnInShift;
+    }
+
+    void setDisplayProperties(boolean lowBitAmbient, boolean burnInProtection) {
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+        invalidate();
+    }
+
+    /**
+     * Call when anything but the time has changed.
+     */
+    void invalidate() {
+        mFrameValid = false;
+        mDrawnMinute = -1;
+    }
+
+    /**
+     * Call when the time shown has changed without the clock moving on, as when the time zone
+     * changes.  The frame behind the time is kept.
+     */
+    void invalidateTime() {
+        mDrawnMinute = -1;
+    }
+
+    /**
+     * @return true if the last frame drawn is still right at the given time, so the minute tick
+     * needn't draw another.
+     */
+    boolean isCurrent(long timeMillis) {
+        return mDrawnMinute == timeMillis / MINUTE_IN_MILLIS;
+    }
+
+    void draw(Canvas canvas, Rect bounds, long timeMillis) {
+        long minute = timeMillis / MINUTE_IN_MILLIS;
+        int saveCount = canvas.save();
+        if (mLowBitAmbient || mBurnInProtection) {
+            canvas.drawColor(Color.BLACK);
+            if (mBurnInProtection) {
+                int[] offset = BURN_IN_OFFSETS[(int) (minute % BURN_IN_OFFSETS.length)];
+                canvas.translate(offset[0] * mBurnInShift, offset[1] * mBurnInShift);
+            }
+            mContent.drawWeather(canvas);
+        } else {
+            if (!mFrameValid || mFrame == null || mFrame.getWidth() != bounds.width()
+                    || mFrame.getHeight() != bounds.height()) {
+                drawFrame(bounds.width(), bounds.height());
+            }
+            canvas.drawBitmap(mFrame, bounds.left, bounds.top, null);
+            mFullScreenBlitCount++;
+        }
+        mContent.drawTime(canvas, timeMillis);
+        canvas.restoreToCount(saveCount);
+        mDrawnMinute = minute;
+        mDrawCount++;
+    }
+
+    private void drawFrame(int width, int height) {
+        if (mFrame == null || mFrame.getWidth() != width || mFrame.getHeight() != height) {
+            if (mFrame != null) {
+                mFrame.recycle();
+            }
+            mFrame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mFrameCanvas = new Canvas(mFrame);
+        }
+        // The background bitmap may not reach every edge
+        mFrame.eraseColor(Color.BLACK);
+        mContent.drawBackground(mFrameCanvas);
+        mContent.drawWeather(mFrameCanvas);
+        mFrameValid = true;
+        mFrameDrawCount++;
+    }
+
+    /**
+     * @return the memory held by the cached frame.
+     */
+    long getBitmapBytes() {
+        return mFrame != null ? mFrame.getAllocationByteCount() : 0;
+    }
+
+    /**
+     * Starts counting draws again from now.
+     */
+    void resetCounters() {
+        mCountingSince = SystemClock.elapsedRealtime();
+        mDrawCount = 0;
+        mFullScreenBlitCount = 0;
+        mFrameDrawCount = 0;
+    }
+
+    int getDrawCount() {
+        return mDrawCount;
+    }
+
+    int getFullScreenBlitCount() {
+        return mFullScreenBlitCount;
+    }
+
+    /**
+     * @return how many times the frame behind the time has been drawn.
+     */
+    int getFrameDrawCount() {
+        return mFrameDrawCount;
+    }
+
+    float getDrawsPerHour() {
+        return perHour(mDrawCount);
+    }
+
+    float getFullScreenBlitsPerHour() {
+        return perHour(mFullScreenBlitCount);
+    }
+
+    private float perHour(int count) {
+        long elapsed = Math.max(SystemClock.elapsedRealtime() - mCountingSince, 1);
+        return (float) count * HOUR_IN_MILLIS / elapsed;
+    }
+
+    /**
+     * Logs the counters, for checking how much drawing ambient mode does.
+     */
+    void logStats() {
+        Log.d(LOG_TAG, "Ambient draws: " + mDrawCount + " (" + Math.round(getDrawsPerHour())
+                + "/hour), full screen blits: " + mFullScreenBlitCount + " ("
+                + Math.round(getFullScreenBlitsPerHour()) + "/hour), frames drawn: "
+                + mFrameDrawCount);
+    }
+}
@@ -1,7 +1,7 @@
 package com.example.android.sunshine.app;
 
 import android.content.Intent;
-import android.os.Bundle;
+import android.os.Build;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
@@ -9,12 +9,17 @@ import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class implementing WearableListenerService for receiving weather data item from SunshineSyncAdapter
@@ -23,6 +28,16 @@ public class DataLayerListenerService extends WearableListenerService {
 
     GoogleApiClient mGoogleApiClient;
     public static final String TODAY_WEATHER_KEY = "/today-weather";
+    /**
+     * A message to this path asks for the watch face's recent frames to be put at
+     * {@link #FRAME_STATS_PATH}, from where they are synced to the phone.
+     */
+    public static final String FRAME_STATS_REQUEST_PATH = "/frame-stats/request";
+    public static final String FRAME_STATS_PATH = "/frame-stats";
+
+    // Weather updates dropped because a newer one came in the same delivery or was already
+    // shown, since the process started.  Deletions aren't counted.
+    private static final AtomicLong sCoalescedUpdateCount = new AtomicLong();
     final String LOG_TAG = DataLayerListenerService.class.getSimpleName();
 
     @Override
@@ -33,40 +48,115 @@ public class DataLayerListenerService extends WearableListenerService {
     }
 
     /**
+     * Decodes the weather and publishes it as a {@link WeatherSnapshot}.  Called on a worker
+     * thread of the service, so the watch face's thread only has to read the snapshot.  Decoding
+     * a data item doesn't need the client to be connected.
+     *
+     * Updates queued while the watch was away from the phone arrive together, not necessarily
+     * in the order they were sent, so only the one with the highest version is used, and only if
+     * it is no older than the weather already shown.  A deletion clears the weather unless an
+     * update comes after it.
+     *
      * @param dataEvents
      */
     @Override
     public void onDataChanged(DataEventBuffer dataEvents) {
-        if (!mGoogleApiClient.isConnected() || !mGoogleApiClient.isConnecting()) {
-            ConnectionResult connectionResult = mGoogleApiClient
-                    .blockingConnect(30, TimeUnit.SECONDS);
-            if (!connectionResult.isSuccess()) {
-                Log.e(LOG_TAG, "DataLayerListenerService failed to connect to GoogleApiClient, "
-                        + "error code: " + connectionResult.getErrorCode());
-                return;
-            }
-        }
-        Bundle weatherBundle = null;
+        DataMap newest = null;
+        boolean deleted = false;
+        int updateCount = 0;
 
         for (DataEvent event : dataEvents) {
-            DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
-            String path = event.getDataItem().getUri().getPath();
+            DataItem dataItem = event.getDataItem();
+            String path = dataItem.getUri().getPath();
 
             if (path.equals(TODAY_WEATHER_KEY)) {
-                weatherBundle = new Bundle();
-                weatherBundle.putString("date", dataMap.getString("date"));
-                weatherBundle.putInt("weatherId", dataMap.getInt("conditionId"));
-                weatherBundle.putString("high", dataMap.getString("high"));
-                weatherBundle.putString("low", dataMap.getString("low"));
-                break;
+                if (event.getType() == DataEvent.TYPE_DELETED) {
+                    newest = null;
+                    deleted = true;
+                } else {
+                    updateCount++;
+                    DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+                    // Ties go to the later event, as with a phone that doesn't send versions
+                    if (newest == null
+                            || dataMap.getLong("version") >= newest.getLong("version")) {
+                        newest = dataMap;
+                        deleted = false;
+                    }
+                }
             }
         }
 
-        if (weatherBundle != null) {
-            Intent messageIntent = new Intent(SunshineDigitalWatchFace.DATA_EVENT);
-            messageIntent.putExtra(SunshineDigitalWatchFace.DATA_KEY, weatherBundle);
-            //send broadcast to SunshineDigitalWatchFace
-            LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(messageIntent);
+        boolean published = (newest != null || deleted)
+                && WeatherSnapshot.publish(deleted ? null : WeatherSnapshot.fromDataMap(newest));
+        int dropped = updateCount - (published && newest != null ? 1 : 0);
+        if (dropped > 0) {
+            long total = sCoalescedUpdateCount.addAndGet(dropped);
+            Log.d(LOG_TAG, "Dropped " + dropped + " of " + updateCount + " weather updates, "
+                    + total + " so far");
+        }
+        if (published) {
+            //tell SunshineDigitalWatchFace to draw the new weather
+            LocalBroadcastManager.getInstance(getApplicationContext())
+                    .sendBroadcast(new Intent(SunshineDigitalWatchFace.DATA_EVENT));
+        }
+    }
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        if (!FRAME_STATS_REQUEST_PATH.equals(messageEvent.getPath()) || !connect()) {
+            return;
+        }
+        FrameStats frameStats = FrameStats.getInstance();
+        FrameStats.Snapshot snapshot = frameStats.snapshot();
+
+        long[] missedTicks = new long[snapshot.size()];
+        byte[] ambient = new byte[snapshot.size()];
+        for (int i = 0; i < snapshot.size(); i++) {
+            missedTicks[i] = snapshot.missedTicks[i];
+            ambient[i] = (byte) (snapshot.ambient[i] ? 1 : 0);
+        }
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(FRAME_STATS_PATH);
+        DataMap dataMap = putDataMapRequest.getDataMap();
+        dataMap.putString("model", Build.MODEL);
+        dataMap.putInt("sdkInt", Build.VERSION.SDK_INT);
+        // Makes every dump a change, so it is synced even if no frame was drawn since the last
+        dataMap.putLong("dumpedAt", System.currentTimeMillis());
+        dataMap.putLong("frameCount", snapshot.frameCount);
+        dataMap.putLong("missedTickCount", snapshot.missedTickCount);
+        dataMap.putLong("coalescedWeatherUpdateCount", sCoalescedUpdateCount.get());
+        dataMap.putLongArray("time", snapshot.times);
+        dataMap.putLongArray("drawNanos", snapshot.drawNanos);
+        dataMap.putLongArray("tickDriftMillis", snapshot.tickDriftMillis);
+        dataMap.putLongArray("missedTicks", missedTicks);
+        dataMap.putLongArray("bitmapBytes", snapshot.bitmapBytes);
+        dataMap.putByteArray("ambient", ambient);
+
+        PutDataRequest request = putDataMapRequest.asPutDataRequest();
+        if (!Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                .await(30, TimeUnit.SECONDS).getStatus().isSuccess()) {
+            Log.e(LOG_TAG, "Failed to put " + snapshot.size() + " frames");
+        }
+    }
+
+    /**
+     * Connects the client if it isn't already.  Blocks, so only call it off the main thread, as
+     * the listener callbacks are.
+     *
+     * @return false if the client couldn't connect
+     */
+    private boolean connect() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        // Also waits out a connection still in progress from onCreate
+        ConnectionResult connectionResult = mGoogleApiClient
+                .blockingConnect(30, TimeUnit.SECONDS);
+        if (!connectionResult.isSuccess()) {
+            Log.e(LOG_TAG, "DataLayerListenerService failed to connect to GoogleApiClient, "
+                    + "error code: " + connectionResult.getErrorCode());
+            return false;
         }
+        return true;
     }
 }
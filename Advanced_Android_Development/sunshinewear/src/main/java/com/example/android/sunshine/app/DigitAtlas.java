@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * The digits and the colon, drawn once with a text paint into an alpha mask, so that drawing
+ * the time is a few bitmap copies rather than laying out text every second.  The mask takes the
+ * color of the paint it is drawn with.
+ */
+class DigitAtlas {
+    private static final String GLYPHS = "0123456789:";
+    private static final int COLON = 10;
+    // Room around each glyph for ink that reaches past its advance
+    private static final int PADDING = 2;
+
+    private final float mTextSize;
+    private final boolean mAntiAlias;
+    private final Typeface mTypeface;
+
+    private final Bitmap mBitmap;
+    private final Rect[] mSources = new Rect[GLYPHS.length()];
+    private final float[] mAdvances = new float[GLYPHS.length()];
+    // From the top of a glyph's cell to its baseline
+    private final int mBaseline;
+    private final Rect mDestination = new Rect();
+
+    DigitAtlas(Paint textPaint) {
+        mTextSize = textPaint.getTextSize();
+        mAntiAlias = textPaint.isAntiAlias();
+        mTypeface = textPaint.getTypeface();
+
+        Paint paint = new Paint(textPaint);
+        paint.setColor(Color.WHITE);
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        mBaseline = PADDING - metrics.top;
+        int height = metrics.bottom - metrics.top + 2 * PADDING;
+
+        int width = 0;
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            mAdvances[i] = paint.measureText(GLYPHS, i, i + 1);
+            int cellWidth = (int) Math.ceil(mAdvances[i]) + 2 * PADDING;
+            mSources[i] = new Rect(width, 0, width + cellWidth, height);
+            width += cellWidth;
+        }
+
+        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            canvas.drawText(GLYPHS, i, i + 1, mSources[i].left + PADDING, mBaseline, paint);
+        }
+    }
+
+    /**
+     * @return true if the glyphs were drawn the way this paint would draw them.
+     */
+    boolean matches(Paint paint) {
+        return mTextSize == paint.getTextSize() && mAntiAlias == paint.isAntiAlias()
+                && mTypeface == paint.getTypeface();
+    }
+
+    /**
+     * Draws the text, which may only hold digits and colons, starting at x with its baseline at
+     * y, in the paint's color.
+     *
+     * @return the x just after the text
+     */
+    float draw(Canvas canvas, char[] text, int length, float x, float y, Paint paint) {
+        int top = Math.round(y) - mBaseline;
+        for (int i = 0; i < length; i++) {
+            int glyph = getGlyph(text[i]);
+            Rect source = mSources[glyph];
+            int left = Math.round(x) - PADDING;
+            mDestination.set(left, top, left + source.width(), top + source.height());
+            canvas.drawBitmap(mBitmap, source, mDestination, paint);
+            x += mAdvances[glyph];
+        }
+        return x;
+    }
+
+    long getBitmapBytes() {
+        return mBitmap.getAllocationByteCount();
+    }
+
+    private static int getGlyph(char c) {
+        if (c == ':') {
+            return COLON;
+        } else if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        throw new IllegalArgumentException("No glyph for '" + c + "'");
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * The timing of the watch face's last {@link #CAPACITY} frames, kept so they can be sent to the
+ * phone to see how the face runs on real watches.
+ *
+ * Frames are recorded by the thread that draws them, at most once a frame, and snapshots are
+ * only taken when the phone asks, so both share one lock: it is almost never contended, and a
+ * snapshot always holds every frame in the buffer.  Older frames are overwritten as new ones
+ * come in.
+ */
+class FrameStats {
+    static final int CAPACITY = 512;
+
+    /**
+     * Tick drift for a frame that wasn't drawn for a tick, such as after a tap.
+     */
+    static final long NO_TICK = -1;
+
+    private static final FrameStats sInstance = new FrameStats();
+
+    private final long[] mTimes = new long[CAPACITY];
+    private final long[] mDrawNanos = new long[CAPACITY];
+    private final long[] mTickDriftMillis = new long[CAPACITY];
+    private final int[] mMissedTicks = new int[CAPACITY];
+    private final long[] mBitmapBytes = new long[CAPACITY];
+    private final boolean[] mAmbient = new boolean[CAPACITY];
+
+    // Frames recorded so far.  Frame n is kept in slot n % CAPACITY until frame n + CAPACITY.
+    private long mFrameCount;
+    private long mMissedTickCount;
+
+    /**
+     * The frames shared by the watch face and the data layer service, which run in one process.
+     */
+    static FrameStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Records a frame.
+     *
+     * @param timeMillis when the frame was drawn
+     * @param drawNanos how long drawing took
+     * @param tickDriftMillis how late the tick that asked for the frame was, or {@link #NO_TICK}
+     * @param missedTicks how many ticks were skipped since the last one
+     * @param bitmapBytes memory held by the face's bitmaps
+     */
+    synchronized void record(long timeMillis, long drawNanos, long tickDriftMillis,
+                             int missedTicks, long bitmapBytes, boolean ambient) {
+        int slot = (int) (mFrameCount % CAPACITY);
+        mTimes[slot] = timeMillis;
+        mDrawNanos[slot] = drawNanos;
+        mTickDriftMillis[slot] = tickDriftMillis;
+        mMissedTicks[slot] = missedTicks;
+        mBitmapBytes[slot] = bitmapBytes;
+        mAmbient[slot] = ambient;
+        if (missedTicks > 0) {
+            mMissedTickCount += missedTicks;
+        }
+        mFrameCount++;
+    }
+
+    synchronized long getFrameCount() {
+        return mFrameCount;
+    }
+
+    synchronized long getMissedTickCount() {
+        return mMissedTickCount;
+    }
+
+    /**
+     * @return a copy of the frames held now, oldest first.  Safe to call from any thread.
+     */
+    synchronized Snapshot snapshot() {
+        long end = mFrameCount;
+        long start = Math.max(0, end - CAPACITY);
+        int size = (int) (end - start);
+        Snapshot snapshot = new Snapshot(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (int) ((start + i) % CAPACITY);
+            snapshot.times[i] = mTimes[slot];
+            snapshot.drawNanos[i] = mDrawNanos[slot];
+            snapshot.tickDriftMillis[i] = mTickDriftMillis[slot];
+            snapshot.missedTicks[i] = mMissedTicks[slot];
+            snapshot.bitmapBytes[i] = mBitmapBytes[slot];
+            snapshot.ambient[i] = mAmbient[slot];
+        }
+        snapshot.frameCount = end;
+        snapshot.missedTickCount = mMissedTickCount;
+        return snapshot;
+    }
+
+    static class Snapshot {
+        final long[] times;
+        final long[] drawNanos;
+        final long[] tickDriftMillis;
+        final int[] missedTicks;
+        final long[] bitmapBytes;
+        final boolean[] ambient;
+        // Frames recorded before the snapshot was taken, including ones no longer held
+        long frameCount;
+        long missedTickCount;
+
+        Snapshot(int size) {
+            times = new long[size];
+            drawNanos = new long[size];
+            tickDriftMillis = new long[size];
+            missedTicks = new int[size];
+            bitmapBytes = new long[size];
+            ambient = new boolean[size];
+        }
+
+        int size() {
+            return times.length;
+        }
+    }
+}
@@ -20,25 +20,15 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.v4.content.LocalBroadcastManager;
-import android.support.v7.graphics.Palette;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
-import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
@@ -51,9 +41,6 @@ import java.util.concurrent.TimeUnit;
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -65,9 +52,13 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Broadcast by {@link DataLayerListenerService} once it has published a new
+     * {@link WeatherSnapshot}.
+     */
     public static final String DATA_EVENT = "DATA_EVENT";
-    public static final String DATA_KEY = "DATA_KEY";
-    private Rect mPeekCardBounds = new Rect();
 
     public static final String LOG_TAG = SunshineDigitalWatchFace.class.getSimpleName();
 
@@ -99,53 +90,28 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        private Paint mBackgroundPaint;
-        private Paint mTextPaint;
         private boolean mAmbient;
-        private Time mTime;
+        private WatchFaceRenderer mRenderer;
+        // The weather the renderer was last given
+        private WeatherSnapshot mWeather;
         MessageReceiver messageReceiver;
 
-        private Bitmap mBackgroundBitmap;
-        private Bitmap mGrayBackgroundBitmap;
-        private int mWatchTimeColor;
-        private boolean mBurnInProtection;
-
-        private Paint mDatePaint;
-        private Paint mHighTempPaint;
-        private Paint mLowTempPaint;
-        private Paint mLinePaint;
-        private int mWeatherId;
-        private String mDdate;
-        private String mHigh;
-        private String mLow;
-
-        private Bitmap mBgClearBitmap;
-        private Bitmap mBgRainBitmap;
-        private Bitmap mBgCloudyBitmap;
-        private Bitmap mBgDrizzleBitmap;
-        private Bitmap mBgFogBitmap;
-        private Bitmap mBgMostlyClearBitmap;
-        private Bitmap mBgSnowBitmap;
-        private Bitmap mBgStormBitmap;
-        private Bitmap mBgThunderstormBitmap;
+        private final FrameStats mFrameStats = FrameStats.getInstance();
+        // When the next interactive tick is due, or 0 if the next one is sent straight away
+        private long mScheduledTickMillis;
+        // The last ambient minute ticked, or -1 if not ticking in ambient mode
+        private long mTickedMinute = -1;
+        // How late the tick that asked for the next frame was, and how many ticks it missed
+        private long mTickDriftMillis = FrameStats.NO_TICK;
+        private int mMissedTicks;
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                mRenderer.setTimeZone(intent.getStringExtra("time-zone"));
+                invalidate();
             }
         };
-        int mTapCount;
-
-        float mXOffset;
-        float mYOffset;
-
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
-        boolean mLowBitAmbient;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -157,55 +123,19 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .setAcceptsTapEvents(true)
                     .build());
-            Resources resources = SunshineDigitalWatchFace.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mWatchTimeColor = Color.WHITE;
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.background));
-            mDatePaint = new Paint();
-            mDatePaint = createTextPaint(mWatchTimeColor);
-            mHighTempPaint = new Paint();
-            mHighTempPaint = createTextPaint(mWatchTimeColor);
-            mLowTempPaint = new Paint();
-            mLowTempPaint = createTextPaint(mWatchTimeColor);
-
-            mTextPaint = new Paint();
-            //   mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
-            mTextPaint = createTextPaint(mWatchTimeColor);
-            mLinePaint = createTextPaint(mWatchTimeColor);
-            mTime = new Time();
+            mRenderer = new WatchFaceRenderer(SunshineDigitalWatchFace.this.getResources());
 
             messageReceiver = new MessageReceiver();
             IntentFilter filter = new IntentFilter(DATA_EVENT);
             LocalBroadcastManager.getInstance(getApplicationContext()).registerReceiver(messageReceiver, filter);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(Color.BLUE);
-            mBackgroundBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_mostly_clear);
-
-            //Bitmaps for each weather condition image
-            mBgClearBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_clear);
-            mBgCloudyBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_cloudy);
-            mBgDrizzleBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_drizzle);
-            mBgFogBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_fog);
-            mBgMostlyClearBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_mostly_clear);
-            mBgRainBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_rain);
-            mBgSnowBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_snow);
-            mBgStormBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_storm);
-            mBgThunderstormBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.img_thunderstorm);
         }
 
         //Class to receive broadcast intent from DataLayerListenerService
         private class MessageReceiver extends BroadcastReceiver {
             @Override
             public void onReceive(Context context, Intent intent) {
-                if (intent.hasExtra(DATA_KEY)) {
-                    Bundle bundle = intent.getBundleExtra(DATA_KEY);
-                    mDdate = bundle.getString("date");
-                    mHigh = bundle.getString("high");
-                    mLow = bundle.getString("low");
-                    mWeatherId = bundle.getInt("weatherId");
-                }
+                // The weather itself is picked up when drawing
+                invalidate();
             }
         }
 
@@ -213,28 +143,7 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
-            float scale = ((float) width) / (float) mBackgroundBitmap.getWidth();
-
-            mBackgroundBitmap = Bitmap.createScaledBitmap(mBackgroundBitmap,
-                    (int) (mBackgroundBitmap.getWidth() * scale),
-                    (int) (mBackgroundBitmap.getHeight() * scale), true);
-            if (!mBurnInProtection && !mLowBitAmbient) {
-                initGrayBackgroundBitmap();
-            }
-        }
-
-        private void initGrayBackgroundBitmap() {
-            mGrayBackgroundBitmap = Bitmap.createBitmap(
-                    mBackgroundBitmap.getWidth(),
-                    mBackgroundBitmap.getHeight(),
-                    Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(mGrayBackgroundBitmap);
-            Paint grayPaint = new Paint();
-            ColorMatrix colorMatrix = new ColorMatrix();
-            colorMatrix.setSaturation(0);
-            ColorMatrixColorFilter filter = new ColorMatrixColorFilter(colorMatrix);
-            grayPaint.setColorFilter(filter);
-            canvas.drawBitmap(mBackgroundBitmap, 0, 0, grayPaint);
+            mRenderer.setSurfaceSize(width, height);
         }
 
         @Override
@@ -243,14 +152,6 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -259,8 +160,7 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                mRenderer.setTimeZone(TimeZone.getDefault().getID());
             } else {
                 unregisterReceiver();
             }
@@ -290,32 +190,31 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
         @Override
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
-
-            // Load resources that have alternate values for round watches.
-            Resources resources = SunshineDigitalWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-
-            mTextPaint.setTextSize(textSize);
-            mDatePaint.setTextSize(resources.getDimension(R.dimen.analog_date_text_size));
-            mHighTempPaint.setTextSize(resources.getDimension(R.dimen.analog_temp_text_size));
-            mLowTempPaint.setTextSize(resources.getDimension(R.dimen.analog_temp_text_size));
+            mRenderer.setRound(insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
-            mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mRenderer.setDisplayProperties(
+                    properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false),
+                    properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false));
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            long now = System.currentTimeMillis();
+            long minute = now / MINUTE_IN_MILLIS;
+            if (mTickedMinute >= 0 && minute > mTickedMinute) {
+                mTickDriftMillis = now % MINUTE_IN_MILLIS;
+                mMissedTicks = (int) (minute - mTickedMinute - 1);
+            }
+            mTickedMinute = minute;
+            // Ticks can come more than once a minute; only draw when the minute has moved on
+            if (!mRenderer.isAmbientFrameCurrent(now)) {
+                invalidate();
+            }
         }
 
         @Override
@@ -323,16 +222,10 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextPaint.setAntiAlias(!inAmbientMode);
-                    mDatePaint.setAntiAlias(!inAmbientMode);
-                    mHighTempPaint.setAntiAlias(!inAmbientMode);
-                    mLowTempPaint.setAntiAlias(!inAmbientMode);
-                    mLinePaint.setAntiAlias(!inAmbientMode);
-                }
-                if (mAmbient) {
-                    getBitmapWeatherCondition();
-                    initGrayBackgroundBitmap();
+                mRenderer.setAmbient(inAmbientMode);
+                mTickedMinute = -1;
+                if (BuildConfig.DEBUG && !inAmbientMode) {
+                    mRenderer.getAmbientRenderer().logStats();
                 }
                 invalidate();
             }
@@ -348,7 +241,6 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
          */
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
-            Resources resources = SunshineDigitalWatchFace.this.getResources();
             switch (tapType) {
                 case TAP_TYPE_TOUCH:
                     // The user has started touching the screen.
@@ -358,9 +250,7 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
                     break;
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
-                    mTapCount++;
-                    mBackgroundPaint.setColor(resources.getColor(mTapCount % 2 == 0 ?
-                            R.color.background : R.color.background2));
+                    mRenderer.toggleBackground();
                     break;
             }
             invalidate();
@@ -368,42 +258,24 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-
-            getBitmapWeatherCondition();
-            if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
-                canvas.drawColor(Color.BLACK);
-            } else if (mAmbient) {
-                canvas.drawBitmap(mGrayBackgroundBitmap, 0, 0, mBackgroundPaint);
-            } else {
-                canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
-            }
-
-
-            float x = mXOffset;
-            float y = mYOffset;
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            mTime.setToNow();
-            String text = mAmbient
-                    ? String.format("%d:%02d", mTime.hour, mTime.minute)
-                    : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
-            canvas.drawText(text, x, y, mTextPaint);
-
-            //check if broadcast is received
-            if (mDdate != null) {
-                y = y + getResources().getDimension(R.dimen.digital_line_height);
-                canvas.drawText(mDdate, x, y, mDatePaint);
-                y += mDatePaint.getTextSize();
-                canvas.drawLine(x, y, x + mDatePaint.measureText(mDdate), y, mLinePaint);
-                y += getResources().getDimension(R.dimen.line_width);
-                canvas.drawText(mHigh, x, y, mHighTempPaint);
-                x += mHighTempPaint.measureText(mHigh) + getResources().getDimension(R.dimen.temp_space_width);
-                canvas.drawText(mLow, x, y, mLowTempPaint);
-                x += mLowTempPaint.measureText(mLow) + getResources().getDimension(R.dimen.temp_space_width);
-                canvas.drawText(getString(SunshineUtility.getWeatherConditionResId(mWeatherId)), x, y, mHighTempPaint);
-            }
-            if (mAmbient) {
-                canvas.drawRect(mPeekCardBounds, mBackgroundPaint);
+            WeatherSnapshot weather = WeatherSnapshot.getLatest();
+            if (weather != mWeather) {
+                mWeather = weather;
+                if (weather != null) {
+                    mRenderer.setWeather(weather.date, weather.high, weather.low,
+                            weather.weatherId);
+                } else {
+                    mRenderer.setWeather(null, null, null, 0);
+                }
             }
+            long now = System.currentTimeMillis();
+            long start = SystemClock.elapsedRealtimeNanos();
+            mRenderer.draw(canvas, bounds, now);
+            long drawNanos = SystemClock.elapsedRealtimeNanos() - start;
+            mFrameStats.record(now, drawNanos, mTickDriftMillis, mMissedTicks,
+                    mRenderer.getBitmapBytes(), mAmbient);
+            mTickDriftMillis = FrameStats.NO_TICK;
+            mMissedTicks = 0;
         }
 
         /**
@@ -412,6 +284,7 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
          */
         private void updateTimer() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mScheduledTickMillis = 0;
             if (shouldTimerBeRunning()) {
                 mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
             }
@@ -429,51 +302,26 @@ public class SunshineDigitalWatchFace extends CanvasWatchFaceService {
          * Handle updating the time periodically in interactive mode.
          */
         private void handleUpdateTimeMessage() {
+            long timeMs = System.currentTimeMillis();
+            if (mScheduledTickMillis != 0) {
+                mTickDriftMillis = timeMs - mScheduledTickMillis;
+                mMissedTicks = (int) Math.max(mTickDriftMillis / INTERACTIVE_UPDATE_RATE_MS, 0);
+            }
             invalidate();
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
                 long delayMs = INTERACTIVE_UPDATE_RATE_MS
                         - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                mScheduledTickMillis = timeMs + delayMs;
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
+            } else {
+                mScheduledTickMillis = 0;
             }
         }
 
         @Override
         public void onPeekCardPositionUpdate(Rect rect) {
             super.onPeekCardPositionUpdate(rect);
-            mPeekCardBounds.set(rect);
-        }
-
-        /**
-         * Find associated bitmap based on weather condition id
-         */
-        private void getBitmapWeatherCondition() {
-            if (mWeatherId > 0) {
-                if (mWeatherId >= 200 && mWeatherId <= 232) {
-                    mBackgroundBitmap = mBgStormBitmap;
-                } else if (mWeatherId >= 300 && mWeatherId <= 321) {
-                    mBackgroundBitmap = mBgDrizzleBitmap;
-                } else if (mWeatherId >= 500 && mWeatherId <= 504) {
-                    mBackgroundBitmap = mBgRainBitmap;
-                } else if (mWeatherId == 511) {
-                    mBackgroundBitmap = mBgSnowBitmap;
-                } else if (mWeatherId >= 520 && mWeatherId <= 531) {
-                    mBackgroundBitmap = mBgRainBitmap;
-                } else if (mWeatherId >= 600 && mWeatherId <= 622) {
-                    mBackgroundBitmap = mBgSnowBitmap;
-                } else if (mWeatherId >= 701 && mWeatherId <= 761) {
-                    mBackgroundBitmap = mBgFogBitmap;
-                } else if (mWeatherId == 761 || mWeatherId == 781) {
-                    mBackgroundBitmap = mBgThunderstormBitmap;
-                } else if (mWeatherId == 800) {
-                    mBackgroundBitmap = mBgClearBitmap;
-                } else if (mWeatherId == 801) {
-                    mBackgroundBitmap = mBgMostlyClearBitmap;
-                } else if (mWeatherId >= 802 && mWeatherId <= 804) {
-                    mBackgroundBitmap = mBgCloudyBitmap;
-                }
-            }
-
+            mRenderer.setPeekCardBounds(rect);
         }
     }
 }
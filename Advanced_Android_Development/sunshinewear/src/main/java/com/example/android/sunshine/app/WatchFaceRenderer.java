@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.format.Time;
+
+/**
+ * Draws {@link SunshineDigitalWatchFace}.  The engine passes on what the system tells it and
+ * asks for a frame at a given time; keeping the drawing here means it can also be driven
+ * without a watch face service, into an offscreen bitmap.
+ *
+ * Only the time changes from one tick to the next, so by default everything else is drawn into
+ * a layer that is kept between frames and redrawn only when the weather, the surface or the mode
+ * changes.  Each frame copies that layer and draws the time over it, a glyph at a time from a
+ * {@link DigitAtlas}.  Ambient mode has an {@link AmbientRenderer} of its own, so going in and
+ * out of it doesn't throw either frame away.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTextPaint;
+    private final Paint mDatePaint;
+    private final Paint mHighTempPaint;
+    private final Paint mLowTempPaint;
+    private final Paint mLinePaint;
+    private final Time mTime;
+    private final Rect mPeekCardBounds = new Rect();
+
+    private Bitmap mBackgroundBitmap;
+    private Bitmap mGrayBackgroundBitmap;
+    // False when the background has changed since the gray copy was made
+    private boolean mGrayBackgroundValid;
+
+    // The background and the weather, everything but the time
+    private boolean mLayered = true;
+    private Bitmap mStaticLayer;
+    private Canvas mStaticLayerCanvas;
+    private boolean mStaticLayerValid;
+
+    private boolean mUseDigitAtlas = true;
+    // With and without anti-aliasing, for low-bit ambient mode
+    private final DigitAtlas[] mDigitAtlases = new DigitAtlas[2];
+
+    private final AmbientRenderer mAmbientRenderer;
+    // Longest is "23:59:59"
+    private final char[] mTimeText = new char[8];
+
+    private final Bitmap mBgClearBitmap;
+    private final Bitmap mBgRainBitmap;
+    private final Bitmap mBgCloudyBitmap;
+    private final Bitmap mBgDrizzleBitmap;
+    private final Bitmap mBgFogBitmap;
+    private final Bitmap mBgMostlyClearBitmap;
+    private final Bitmap mBgSnowBitmap;
+    private final Bitmap mBgStormBitmap;
+    private final Bitmap mBgThunderstormBitmap;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mBurnInProtection;
+    private int mTapCount;
+
+    private float mXOffset;
+    private final float mYOffset;
+
+    private int mWeatherId;
+    private String mDdate;
+    private String mHigh;
+    private String mLow;
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+        mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+        int watchTimeColor = Color.WHITE;
+        mDatePaint = createTextPaint(watchTimeColor);
+        mHighTempPaint = createTextPaint(watchTimeColor);
+        mLowTempPaint = createTextPaint(watchTimeColor);
+        mTextPaint = createTextPaint(watchTimeColor);
+        mLinePaint = createTextPaint(watchTimeColor);
+        mTime = new Time();
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(Color.BLUE);
+        mBackgroundBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_mostly_clear);
+
+        //Bitmaps for each weather condition image
+        mBgClearBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_clear);
+        mBgCloudyBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_cloudy);
+        mBgDrizzleBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_drizzle);
+        mBgFogBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_fog);
+        mBgMostlyClearBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_mostly_clear);
+        mBgRainBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_rain);
+        mBgSnowBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_snow);
+        mBgStormBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_storm);
+        mBgThunderstormBitmap = BitmapFactory.decodeResource(resources, R.drawable.img_thunderstorm);
+
+        mAmbientRenderer = new AmbientRenderer(new AmbientRenderer.Content() {
+            @Override
+            public void drawBackground(Canvas canvas) {
+                WatchFaceRenderer.this.drawBackground(canvas);
+            }
+
+            @Override
+            public void drawWeather(Canvas canvas) {
+                WatchFaceRenderer.this.drawWeather(canvas);
+            }
+
+            @Override
+            public void drawTime(Canvas canvas, long timeMillis) {
+                WatchFaceRenderer.this.drawTime(canvas, timeMillis);
+            }
+        }, resources.getDimensionPixelOffset(R.dimen.burn_in_shift));
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Loads the sizes that have alternate values for round watches.
+     */
+    void setRound(boolean isRound) {
+        mXOffset = mResources.getDimension(isRound
+                ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
+        float textSize = mResources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
+
+        mTextPaint.setTextSize(textSize);
+        mDatePaint.setTextSize(mResources.getDimension(R.dimen.analog_date_text_size));
+        mHighTempPaint.setTextSize(mResources.getDimension(R.dimen.analog_temp_text_size));
+        mLowTempPaint.setTextSize(mResources.getDimension(R.dimen.analog_temp_text_size));
+        invalidateLayers();
+    }
+
+    void setSurfaceSize(int width, int height) {
+        float scale = ((float) width) / (float) mBackgroundBitmap.getWidth();
+
+        mBackgroundBitmap = Bitmap.createScaledBitmap(mBackgroundBitmap,
+                (int) (mBackgroundBitmap.getWidth() * scale),
+                (int) (mBackgroundBitmap.getHeight() * scale), true);
+        mGrayBackgroundValid = false;
+        invalidateLayers();
+    }
+
+    /**
+     * @param lowBitAmbient whether the display supports fewer bits for each color in ambient
+     *                      mode.  When true, we disable anti-aliasing in ambient mode.
+     * @param burnInProtection whether the display needs large areas of lit pixels avoided in
+     *                         ambient mode
+     */
+    void setDisplayProperties(boolean lowBitAmbient, boolean burnInProtection) {
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+        mAmbientRenderer.setDisplayProperties(lowBitAmbient, burnInProtection);
+        mStaticLayerValid = false;
+    }
+
+    void setAmbient(boolean inAmbientMode) {
+        if (mAmbient == inAmbientMode) {
+            return;
+        }
+        mAmbient = inAmbientMode;
+        if (mLowBitAmbient) {
+            mTextPaint.setAntiAlias(!inAmbientMode);
+            mDatePaint.setAntiAlias(!inAmbientMode);
+            mHighTempPaint.setAntiAlias(!inAmbientMode);
+            mLowTempPaint.setAntiAlias(!inAmbientMode);
+            mLinePaint.setAntiAlias(!inAmbientMode);
+        }
+        // Everything that changes the ambient frame, gray background included, invalidates it
+        // as it happens, so the one drawn last time is kept
+    }
+
+    void setTimeZone(String timeZoneId) {
+        mTime.clear(timeZoneId);
+        mAmbientRenderer.invalidateTime();
+    }
+
+    void setWeather(String date, String high, String low, int weatherId) {
+        mDdate = date;
+        mHigh = high;
+        mLow = low;
+        mWeatherId = weatherId;
+        Bitmap background = mBackgroundBitmap;
+        getBitmapWeatherCondition();
+        if (mBackgroundBitmap != background) {
+            mGrayBackgroundValid = false;
+        }
+        invalidateLayers();
+    }
+
+    void setPeekCardBounds(Rect rect) {
+        mPeekCardBounds.set(rect);
+    }
+
+    /**
+     * Switches between the two background colors.
+     */
+    void toggleBackground() {
+        mTapCount++;
+        mBackgroundPaint.setColor(mResources.getColor(mTapCount % 2 == 0 ?
+                R.color.background : R.color.background2));
+        invalidateLayers();
+    }
+
+    /**
+     * @param layered whether to keep everything but the time in a layer between frames, and draw
+     *                ambient mode with the {@link AmbientRenderer}, rather than drawing it all
+     *                every frame
+     */
+    void setLayered(boolean layered) {
+        mLayered = layered;
+        if (!layered && mStaticLayer != null) {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+            mStaticLayerCanvas = null;
+        }
+        invalidateLayers();
+    }
+
+    private void invalidateLayers() {
+        mStaticLayerValid = false;
+        mAmbientRenderer.invalidate();
+    }
+
+    AmbientRenderer getAmbientRenderer() {
+        return mAmbientRenderer;
+    }
+
+    /**
+     * @return true if the face is in ambient mode and the last frame drawn is still right at the
+     * given time.
+     */
+    boolean isAmbientFrameCurrent(long timeMillis) {
+        return mAmbient && mLayered && mAmbientRenderer.isCurrent(timeMillis);
+    }
+
+    /**
+     * @param useDigitAtlas whether to draw the time from pre-drawn glyphs, rather than as text
+     */
+    void setUseDigitAtlas(boolean useDigitAtlas) {
+        mUseDigitAtlas = useDigitAtlas;
+    }
+
+    /**
+     * @return the memory held by the face's bitmaps: the weather backgrounds, the layers and the
+     * glyphs.
+     */
+    long getBitmapBytes() {
+        long bytes = mBgClearBitmap.getAllocationByteCount()
+                + mBgRainBitmap.getAllocationByteCount()
+                + mBgCloudyBitmap.getAllocationByteCount()
+                + mBgDrizzleBitmap.getAllocationByteCount()
+                + mBgFogBitmap.getAllocationByteCount()
+                + mBgMostlyClearBitmap.getAllocationByteCount()
+                + mBgSnowBitmap.getAllocationByteCount()
+                + mBgStormBitmap.getAllocationByteCount()
+                + mBgThunderstormBitmap.getAllocationByteCount()
+                + mAmbientRenderer.getBitmapBytes();
+        // Until the weather arrives, or once scaled, the background is a bitmap of its own
+        if (!isWeatherBitmap(mBackgroundBitmap)) {
+            bytes += mBackgroundBitmap.getAllocationByteCount();
+        }
+        if (mGrayBackgroundBitmap != null) {
+            bytes += mGrayBackgroundBitmap.getAllocationByteCount();
+        }
+        if (mStaticLayer != null) {
+            bytes += mStaticLayer.getAllocationByteCount();
+        }
+        for (DigitAtlas atlas : mDigitAtlases) {
+            if (atlas != null) {
+                bytes += atlas.getBitmapBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private boolean isWeatherBitmap(Bitmap bitmap) {
+        return bitmap == mBgClearBitmap || bitmap == mBgRainBitmap || bitmap == mBgCloudyBitmap
+                || bitmap == mBgDrizzleBitmap || bitmap == mBgFogBitmap
+                || bitmap == mBgMostlyClearBitmap || bitmap == mBgSnowBitmap
+                || bitmap == mBgStormBitmap || bitmap == mBgThunderstormBitmap;
+    }
+
+    void draw(Canvas canvas, Rect bounds, long timeMillis) {
+        if (mLayered && mAmbient) {
+            mAmbientRenderer.draw(canvas, bounds, timeMillis);
+        } else if (mLayered) {
+            if (!mStaticLayerValid || mStaticLayer == null
+                    || mStaticLayer.getWidth() != bounds.width()
+                    || mStaticLayer.getHeight() != bounds.height()) {
+                drawStaticLayer(bounds.width(), bounds.height());
+            }
+            canvas.drawBitmap(mStaticLayer, bounds.left, bounds.top, null);
+            drawTime(canvas, timeMillis);
+        } else {
+            drawBackground(canvas);
+            drawWeather(canvas);
+            drawTime(canvas, timeMillis);
+        }
+        if (mAmbient) {
+            canvas.drawRect(mPeekCardBounds, mBackgroundPaint);
+        }
+    }
+
+    private void drawStaticLayer(int width, int height) {
+        if (mStaticLayer == null || mStaticLayer.getWidth() != width
+                || mStaticLayer.getHeight() != height) {
+            if (mStaticLayer != null) {
+                mStaticLayer.recycle();
+            }
+            mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mStaticLayerCanvas = new Canvas(mStaticLayer);
+        }
+        // The background bitmap may not reach every edge
+        mStaticLayer.eraseColor(Color.BLACK);
+        drawBackground(mStaticLayerCanvas);
+        drawWeather(mStaticLayerCanvas);
+        mStaticLayerValid = true;
+    }
+
+    private void drawBackground(Canvas canvas) {
+        if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
+            canvas.drawColor(Color.BLACK);
+        } else if (mAmbient) {
+            if (!mGrayBackgroundValid) {
+                initGrayBackgroundBitmap();
+            }
+            canvas.drawBitmap(mGrayBackgroundBitmap, 0, 0, mBackgroundPaint);
+        } else {
+            canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
+        }
+    }
+
+    private void drawTime(Canvas canvas, long timeMillis) {
+        // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+        mTime.set(timeMillis);
+        if (mUseDigitAtlas) {
+            int length = appendNumber(mTimeText, 0, mTime.hour, false);
+            mTimeText[length++] = ':';
+            length = appendNumber(mTimeText, length, mTime.minute, true);
+            if (!mAmbient) {
+                mTimeText[length++] = ':';
+                length = appendNumber(mTimeText, length, mTime.second, true);
+            }
+            getDigitAtlas().draw(canvas, mTimeText, length, mXOffset, mYOffset, mTextPaint);
+        } else {
+            String text = mAmbient
+                    ? String.format("%d:%02d", mTime.hour, mTime.minute)
+                    : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
+            canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
+        }
+    }
+
+    /**
+     * Writes a number below 100 into the text at the given position, with a leading zero if
+     * asked for.
+     *
+     * @return the position after the number
+     */
+    private static int appendNumber(char[] text, int position, int value, boolean twoDigits) {
+        if (twoDigits || value >= 10) {
+            text[position++] = (char) ('0' + value / 10);
+        }
+        text[position++] = (char) ('0' + value % 10);
+        return position;
+    }
+
+    /**
+     * @return the glyphs for the time paint as it is now, drawing them again if its size or
+     * anti-aliasing changed since they were last drawn.
+     */
+    private DigitAtlas getDigitAtlas() {
+        int index = mTextPaint.isAntiAlias() ? 1 : 0;
+        DigitAtlas atlas = mDigitAtlases[index];
+        if (atlas == null || !atlas.matches(mTextPaint)) {
+            atlas = new DigitAtlas(mTextPaint);
+            mDigitAtlases[index] = atlas;
+        }
+        return atlas;
+    }
+
+    private void drawWeather(Canvas canvas) {
+        //check if broadcast is received
+        if (mDdate == null) {
+            return;
+        }
+        float x = mXOffset;
+        float y = mYOffset + mResources.getDimension(R.dimen.digital_line_height);
+        canvas.drawText(mDdate, x, y, mDatePaint);
+        y += mDatePaint.getTextSize();
+        canvas.drawLine(x, y, x + mDatePaint.measureText(mDdate), y, mLinePaint);
+        y += mResources.getDimension(R.dimen.line_width);
+        canvas.drawText(mHigh, x, y, mHighTempPaint);
+        x += mHighTempPaint.measureText(mHigh) + mResources.getDimension(R.dimen.temp_space_width);
+        canvas.drawText(mLow, x, y, mLowTempPaint);
+        x += mLowTempPaint.measureText(mLow) + mResources.getDimension(R.dimen.temp_space_width);
+        canvas.drawText(mResources.getString(SunshineUtility.getWeatherConditionResId(mWeatherId)),
+                x, y, mHighTempPaint);
+    }
+
+    /**
+     * Makes the gray copy of the background for full color ambient mode.  Only called when the
+     * background has changed; the tap color is in the paint, not the bitmap, so it doesn't count.
+     */
+    private void initGrayBackgroundBitmap() {
+        if (mGrayBackgroundBitmap != null
+                && mGrayBackgroundBitmap.getWidth() == mBackgroundBitmap.getWidth()
+                && mGrayBackgroundBitmap.getHeight() == mBackgroundBitmap.getHeight()) {
+            // Same size as before, so draw over the old copy rather than allocating another
+            mGrayBackgroundBitmap.eraseColor(Color.TRANSPARENT);
+        } else {
+            mGrayBackgroundBitmap = Bitmap.createBitmap(
+                    mBackgroundBitmap.getWidth(),
+                    mBackgroundBitmap.getHeight(),
+                    Bitmap.Config.ARGB_8888);
+        }
+        Canvas canvas = new Canvas(mGrayBackgroundBitmap);
+        Paint grayPaint = new Paint();
+        ColorMatrix colorMatrix = new ColorMatrix();
+        colorMatrix.setSaturation(0);
+        ColorMatrixColorFilter filter = new ColorMatrixColorFilter(colorMatrix);
+        grayPaint.setColorFilter(filter);
+        canvas.drawBitmap(mBackgroundBitmap, 0, 0, grayPaint);
+        mGrayBackgroundValid = true;
+    }
+
+    /**
+     * Find associated bitmap based on weather condition id
+     */
+    private void getBitmapWeatherCondition() {
+        if (mWeatherId > 0) {
+            if (mWeatherId >= 200 && mWeatherId <= 232) {
+                mBackgroundBitmap = mBgStormBitmap;
+            } else if (mWeatherId >= 300 && mWeatherId <= 321) {
+                mBackgroundBitmap = mBgDrizzleBitmap;
+            } else if (mWeatherId >= 500 && mWeatherId <= 504) {
+                mBackgroundBitmap = mBgRainBitmap;
+            } else if (mWeatherId == 511) {
+                mBackgroundBitmap = mBgSnowBitmap;
+            } else if (mWeatherId >= 520 && mWeatherId <= 531) {
+                mBackgroundBitmap = mBgRainBitmap;
+            } else if (mWeatherId >= 600 && mWeatherId <= 622) {
+                mBackgroundBitmap = mBgSnowBitmap;
+            } else if (mWeatherId >= 701 && mWeatherId <= 761) {
+                mBackgroundBitmap = mBgFogBitmap;
+            } else if (mWeatherId == 761 || mWeatherId == 781) {
+                mBackgroundBitmap = mBgThunderstormBitmap;
+            } else if (mWeatherId == 800) {
+                mBackgroundBitmap = mBgClearBitmap;
+            } else if (mWeatherId == 801) {
+                mBackgroundBitmap = mBgMostlyClearBitmap;
+            } else if (mWeatherId >= 802 && mWeatherId <= 804) {
+                mBackgroundBitmap = mBgCloudyBitmap;
+            }
+        }
+    }
+}
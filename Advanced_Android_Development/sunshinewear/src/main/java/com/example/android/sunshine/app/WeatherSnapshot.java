@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import com.google.android.gms.wearable.DataMap;
+
+/**
+ * Today's weather as last sent by the phone.  Snapshots never change once made; new weather is
+ * published as a new snapshot, which the watch face picks up when it next draws, from whichever
+ * thread it draws on and without taking a lock.
+ */
+final class WeatherSnapshot {
+    private static volatile WeatherSnapshot sLatest;
+
+    final String date;
+    final String high;
+    final String low;
+    final int weatherId;
+    // Bumped by the phone whenever the weather changes
+    final long version;
+
+    WeatherSnapshot(String date, String high, String low, int weatherId, long version) {
+        this.date = date;
+        this.high = high;
+        this.low = low;
+        this.weatherId = weatherId;
+        this.version = version;
+    }
+
+    /**
+     * Reads the weather the phone puts at {@link DataLayerListenerService#TODAY_WEATHER_KEY}.
+     */
+    static WeatherSnapshot fromDataMap(DataMap dataMap) {
+        return new WeatherSnapshot(dataMap.getString("date"), dataMap.getString("high"),
+                dataMap.getString("low"), dataMap.getInt("conditionId"),
+                dataMap.getLong("version"));
+    }
+
+    /**
+     * @return the weather last published, or null if none has arrived since the process started
+     * or the phone has deleted it.
+     */
+    static WeatherSnapshot getLatest() {
+        return sLatest;
+    }
+
+    /**
+     * Publishes new weather, unless it is older than the weather already published, as when two
+     * deliveries from the phone race each other.  Publishers take a lock so the check and the
+     * swap happen together; the watch face still reads without one.
+     *
+     * @param weather the new weather, or null if there no longer is any
+     * @return false if the weather was older and dropped.
+     */
+    static synchronized boolean publish(WeatherSnapshot weather) {
+        WeatherSnapshot latest = sLatest;
+        if (weather != null && latest != null && weather.version < latest.version) {
+            return false;
+        }
+        sLatest = weather;
+        return true;
+    }
+}